@@ -0,0 +1,161 @@
+import java.io.*;
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.util.*;
+import org.biosino.CHS.algorithm.*;
+
+/**
+ * The class is responsible for searching CHS in command line without display, e.g. in pipelines.
+ * CHS are written to the output file while chromosome pairs are searched in parallel,
+ * and the metrics of each phase and the totals of chromosome pairs (see {@link Metrics})
+ * are reported to standard error.
+ * Run it without arguments for usage.
+ */
+public class BatchRunner {
+
+    private static final String USAGE =
+            "Usage: java BatchRunner -in <gene file> -out <CHS file> [options]\n" +
+            "  -in <file>         gene file (see IO.readGeneFile)\n" +
+            "  -snapshot <file>   preprocessed gene snapshot, read instead of -in (-merge and -null are ignored)\n" +
+            "  -save <file>       save a snapshot of preprocessed genes for later runs\n" +
+            "  -out <file>        output CHS file\n" +
+            "  -inter             compare between species (default: within species)\n" +
+            "  -exclude <list>    chromosomes not searched, as tax:chr separated by ','\n" +
+            "  -merge <bool>      merge tandem repeated genes (default: true)\n" +
+            "  -null <id>         null family id (default: 0)\n" +
+            "  -size <num>        minimum size of CHS (default: 2)\n" +
+            "  -gap <num>         maximum gap between neighboring genes, in mean gene lengths (default: 30)\n" +
+            "  -anchors           calculate statistics from search anchors instead of all matched genes\n" +
+            "  -sort              write CHS sorted after the search instead of streaming them\n" +
+            "  -threads <num>     number of threads (default: available processors)\n" +
+            "  -metrics <file>    export metrics of phases and chromosome pairs in JSON";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null || !options.containsKey("-out") ||
+                options.containsKey("-in") == options.containsKey("-snapshot")) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        int threadNum = Integer.parseInt(get(options, "-threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int size = Integer.parseInt(get(options, "-size", "2"));
+        int gap = Integer.parseInt(get(options, "-gap", "30"));
+        boolean mergeTandem = Boolean.parseBoolean(get(options, "-merge", "true"));
+        String nullFamID = get(options, "-null", "0");
+        boolean intraOrg = !options.containsKey("-inter");
+        boolean anchorsUsed = options.containsKey("-anchors");
+        boolean sorted = options.containsKey("-sort");
+        String outFile = options.get("-out");
+        Metrics metrics = new Metrics();
+
+        // Read and preprocess genes
+        PreProcessor iPrePro;
+        if (options.containsKey("-snapshot")) {
+            metrics.startPhase("read snapshot");
+            iPrePro = GeneSnapshot.read(options.get("-snapshot"));
+            metrics.endPhase("read snapshot");
+        } else {
+            metrics.startPhase("read genes");
+            Map<Chromosome, List<Gene>> chrMap = IO.readGeneFile(options.get("-in"), threadNum);
+            metrics.endPhase("read genes");
+            metrics.startPhase("preprocess");
+            iPrePro = new PreProcessor(chrMap, mergeTandem, nullFamID);
+            metrics.endPhase("preprocess");
+        }
+        if (options.containsKey("-save")) {
+            metrics.startPhase("save snapshot");
+            GeneSnapshot.write(iPrePro, options.get("-save"));
+            metrics.endPhase("save snapshot");
+        }
+
+        List<Chromosome> chrList = new ArrayList<Chromosome>(iPrePro.filteredColumnMap.keySet());
+        Collections.sort(chrList);
+        if (options.containsKey("-exclude")) {
+            for (String name : options.get("-exclude").split(",")) {
+                int sep = name.lastIndexOf(':');
+                if (sep < 0) {
+                    System.err.println("Wrong chromosome " + name + ", which should be tax:chr");
+                    System.exit(1);
+                }
+                chrList.remove(Chromosome.getInstance(name.substring(0, sep), name.substring(sep + 1)));
+            }
+        }
+
+        // Search CHS and write them
+        SearchEngine iEngine = new SearchEngine(size, gap * iPrePro.geneMeanLen, threadNum);
+        iEngine.setAnchorsRecorded(anchorsUsed);
+        iEngine.setCountersRecorded(true);
+        int CHSNum;
+        if (sorted) {
+            metrics.startPhase("search");
+            List<CHS> CHSList = iEngine.search(chrList, iPrePro.filteredColumnMap, intraOrg);
+            Collections.sort(CHSList);
+            metrics.endPhase("search");
+            metrics.startPhase("postprocess");
+            PostProcessor iPostPro = new PostProcessor(iPrePro, CHSList, gap, threadNum, anchorsUsed);
+            metrics.endPhase("postprocess");
+            metrics.startPhase("write");
+            IO.writeCHSFile(iPostPro, outFile);
+            metrics.endPhase("write");
+            CHSNum = CHSList.size();
+        } else {
+            final CHSWriter iWriter = new CHSWriter(new PostProcessor(iPrePro, gap, anchorsUsed), outFile);
+            iEngine.setResultsKept(false);
+            iEngine.setListener(new SearchListener() {
+                public void pairSearched(Chromosome chrA, Chromosome chrB, List<CHS> CHSList,
+                        int done, int total) {
+                    try {
+                        iWriter.write(CHSList);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            metrics.startPhase("search and postprocess");
+            iEngine.search(chrList, iPrePro.filteredColumnMap, intraOrg);
+            metrics.endPhase("search and postprocess");
+            metrics.startPhase("write remaining");
+            CHSNum = iWriter.close();
+            metrics.endPhase("write remaining");
+        }
+        System.err.println(CHSNum + " CHS written to " + outFile);
+
+        for (PairCounters counters : iEngine.getPairCounters()) {
+            metrics.addPair(counters.chrA.tax + ":" + counters.chrA.chr, counters.chrB.tax + ":" + counters.chrB.chr,
+                    counters.toMap());
+        }
+        System.err.print(metrics);
+        if (options.containsKey("-metrics")) {
+            metrics.writeJSON(options.get("-metrics"));
+        }
+    }
+
+    /**
+     * Parse options into a map from option names to values; flags are mapped to empty strings.
+     * @return the map; <CODE>null</CODE> if an option is unknown or lacks its value
+     */
+    private static Map<String, String> parseOptions (String[] args) {
+        Set<String> flags = new HashSet<String>(Arrays.asList("-inter", "-anchors", "-sort"));
+        Set<String> valued = new HashSet<String>(Arrays.asList("-in", "-snapshot", "-save", "-out",
+                "-exclude", "-merge", "-null", "-size", "-gap", "-threads", "-metrics"));
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (flags.contains(args[i])) {
+                options.put(args[i], "");
+            } else if (valued.contains(args[i]) && i + 1 < args.length) {
+                options.put(args[i], args[++i]);
+            } else {
+                System.err.println("Unknown option or missing value: " + args[i]);
+                return null;
+            }
+        }
+        return options;
+    }
+
+    private static String get (Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
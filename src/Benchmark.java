@@ -0,0 +1,322 @@
+import java.io.*;
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.util.*;
+import org.biosino.CHS.algorithm.*;
+import org.biosino.CHS.image.*;
+
+/**
+ * The class is responsible for benchmarking CHS package in command line.
+ * Each benchmark runs one round to warm up and then the given rounds, and reports the mean time of a round.
+ * The whole pipeline is also benchmarked on synthetic scale-ups of the gene file, in which
+ * chromosomes are copied with new names, so that the copies are homologous to each other.
+ * Usage: java Benchmark [gene file] [rounds] [max scale]
+ */
+public class Benchmark {
+
+    public static void main(String[] args) throws Exception {
+        String fileName = args.length > 0 ? args[0] :
+                "data" + File.separator + "input" + File.separator + "9606_15.txt";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxScale = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int threadNum = Runtime.getRuntime().availableProcessors();
+        int gap = 30;
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");    // for rendering on servers
+        }
+
+        List<CHS> CHSList = benchPipeline(fileName, "", rounds, gap, threadNum);
+
+        Map<Chromosome, List<Gene>> chrMap = IO.readGeneFile(fileName);
+        List<Chromosome> chrList = new ArrayList<Chromosome>(chrMap.keySet());
+        Collections.sort(chrList);
+        PreProcessor iPrePro = new PreProcessor(chrMap, true, "0");
+
+        benchGreedyAlg(chrList, iPrePro, gap, rounds, null);
+        benchGreedyAlg(chrList, iPrePro, gap, rounds, new FamilyIndexCache());
+        benchGreedyAlgPair(chrList, iPrePro, gap, rounds);
+
+        for (int labNum = 50; labNum <= 400; labNum *= 2) {
+            benchLPAlg(labNum, rounds);
+        }
+        benchRendering(iPrePro, CHSList, gap, rounds);
+
+        for (int scale = 2; scale <= maxScale; scale *= 2) {
+            File scaledFile = scaleUp(fileName, scale);
+            try {
+                benchPipeline(scaledFile.getPath(), " x" + scale, Math.max(1, rounds / scale), gap, threadNum);
+            } finally {
+                scaledFile.delete();
+            }
+        }
+    }
+
+    /**
+     * An operation to be benchmarked.
+     */
+    private static abstract class Case {
+        /**
+         * Prepare a round, which is not timed.
+         */
+        void setUp () throws Exception {
+        }
+
+        /**
+         * Run a round.
+         * @return a number depending on the result, which is reported and keeps the result from being optimized away
+         */
+        abstract long run () throws Exception;
+    }
+
+    /**
+     * Run a case for the given rounds after one round to warm up, and report the mean time of a round.
+     */
+    private static void bench (String name, String unit, int rounds, Case c) throws Exception {
+        long total = 0;
+        long result = 0;
+        for (int r = 0; r <= rounds; r++) {
+            c.setUp();
+            long time = System.nanoTime();
+            result = c.run();
+            if (r > 0) {
+                total += System.nanoTime() - time;
+            }
+        }
+        System.out.println(name + "\t" + result + " " + unit + "\t" +
+                (total / rounds / 1000000.0) + " ms/round");
+    }
+
+    /**
+     * Benchmark each step of the pipeline within species: reading the gene file, preprocess,
+     * searching and calculating statistics, serially and with the given threads.
+     * @return the CHS found
+     */
+    private static List<CHS> benchPipeline (final String fileName, String label, int rounds,
+            final int gap, int threadNum) throws Exception {
+        for (final int threads : new TreeSet<Integer>(Arrays.asList(1, threadNum))) {
+            bench("IO.readGeneFile (" + threads + " threads)" + label, "chromosomes", rounds, new Case() {
+                long run () throws Exception {
+                    return IO.readGeneFile(fileName, threads).size();
+                }
+            });
+        }
+
+        // genes are read once, since preprocess does not modify them
+        final Map<Chromosome, List<Gene>> chrMap = IO.readGeneFile(fileName);
+        bench("PreProcessor" + label, "chromosomes", rounds, new Case() {
+            long run () throws Exception {
+                return new PreProcessor(chrMap, true, "0").filteredColumnMap.size();
+            }
+        });
+
+        final List<Chromosome> chrList = new ArrayList<Chromosome>(chrMap.keySet());
+        Collections.sort(chrList);
+        final PreProcessor iPrePro = new PreProcessor(chrMap, true, "0");
+        final List<CHS> CHSList = new ArrayList<CHS>();
+        for (final int threads : new TreeSet<Integer>(Arrays.asList(1, threadNum))) {
+            bench("SearchEngine.search (" + threads + " threads)" + label, "CHS", rounds, new Case() {
+                long run () {
+                    CHSList.clear();
+                    CHSList.addAll(new SearchEngine(2, gap * iPrePro.geneMeanLen, threads).search(
+                            chrList, iPrePro.filteredColumnMap, true));
+                    return CHSList.size();
+                }
+            });
+        }
+        for (final int threads : new TreeSet<Integer>(Arrays.asList(1, threadNum))) {
+            bench("PostProcessor (" + threads + " threads)" + label, "CHS", rounds, new Case() {
+                long run () {
+                    return new PostProcessor(iPrePro, CHSList, gap, threads).CHSList.size();
+                }
+            });
+        }
+        return CHSList;
+    }
+
+    /**
+     * Benchmark serial searching with <CODE>GreedyAlg</CODE> for all chromosome pairs within species.
+     * The first round is used to warm up and not counted.
+     * If <CODE>cache</CODE> is not null, family indexes are taken from it instead of built for each pair.
+     */
+    private static void benchGreedyAlg (List<Chromosome> chrList, PreProcessor iPrePro,
+            int gap, int rounds, FamilyIndexCache cache) {
+        GreedyAlg iAlg = new GreedyAlg(2, gap * iPrePro.geneMeanLen);
+        Map<Chromosome, List<Gene>> chrMap = PreProcessor.getGeneLists(iPrePro.filteredColumnMap);
+        long total = 0;
+        int CHSNum = 0;
+        for (int r = 0; r <= rounds; r++) {
+            long time = System.nanoTime();
+            CHSNum = 0;
+            for (int i = 0; i < chrList.size(); i++) {
+                for (int j = 0; j <= i; j++) {
+                    Chromosome chr1 = chrList.get(i);
+                    Chromosome chr2 = chrList.get(j);
+                    if (!chr1.tax.equals(chr2.tax))
+                        continue;
+                    List<Gene> list1 = chrMap.get(chr1);
+                    List<Gene> list2 = chrMap.get(chr2);
+                    if (cache == null) {
+                        CHSNum += iAlg.search(chr1, chr2, list1, list2).size();
+                    } else {
+                        CHSNum += iAlg.search(chr1, chr2,
+                                cache.get(chr1, iPrePro.filteredColumnMap.get(chr1)),
+                                cache.get(chr2, iPrePro.filteredColumnMap.get(chr2))).size();
+                    }
+                }
+            }
+            if (r > 0) {
+                total += System.nanoTime() - time;
+            }
+        }
+        System.out.println("GreedyAlg.search" + (cache == null ? "" : " (cached index)") + "\t" + CHSNum + " CHS\t" +
+                (total / rounds / 1000000.0) + " ms/round");
+    }
+
+    /**
+     * Benchmark label placement by <CODE>LPAlg.getLabLoc</CODE> against the linear programming version
+     * for random gene locations, and report the total distances between genes and labels of both.
+     * The first round is used to warm up and not counted.
+     */
+    private static void benchLPAlg (int labNum, int rounds) {
+        Random random = new Random(labNum);
+        double[] x = new double[labNum];
+        for (int i = 0; i < labNum; i++) {
+            x[i] = random.nextDouble() * labNum * 10;
+        }
+        Arrays.sort(x);
+        double dist = 12;
+
+        long[] total = new long[2];
+        double[][] y = new double[2][];
+        for (int r = 0; r <= rounds; r++) {
+            for (int k = 0; k < 2; k++) {
+                long time = System.nanoTime();
+                y[k] = k == 0 ? LPAlg.getLabLoc(x, dist) : LPAlg.getLabLocSimplex(x, dist);
+                if (r > 0) {
+                    total[k] += System.nanoTime() - time;
+                }
+            }
+        }
+        for (int k = 0; k < 2; k++) {
+            String distance = "failed";
+            if (y[k] != null) {
+                double sum = 0;
+                for (int i = 0; i < labNum; i++) {
+                    sum += Math.abs(y[k][i] - x[i]);
+                }
+                distance = "distance " + sum;
+            }
+            System.out.println("LPAlg.getLabLoc" + (k == 0 ? "" : "Simplex") + "\t" + labNum + " labels\t" +
+                    distance + "\t" + (total[k] / rounds / 1000000.0) + " ms/round");
+        }
+    }
+
+    /**
+     * Benchmark serial searching with <CODE>GreedyAlg</CODE> for the chromosome pair within species
+     * with the most genes, which dominates the time of searching.
+     */
+    private static void benchGreedyAlgPair (List<Chromosome> chrList, final PreProcessor iPrePro,
+            int gap, int rounds) throws Exception {
+        Chromosome chr1 = null, chr2 = null;
+        long maxCost = -1;
+        for (int i = 0; i < chrList.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                Chromosome chrA = chrList.get(i);
+                Chromosome chrB = chrList.get(j);
+                long cost = (long)iPrePro.filteredColumnMap.get(chrA).size * iPrePro.filteredColumnMap.get(chrB).size;
+                if (chrA.tax.equals(chrB.tax) && cost > maxCost) {
+                    chr1 = chrA;
+                    chr2 = chrB;
+                    maxCost = cost;
+                }
+            }
+        }
+        if (chr1 == null) {
+            return;
+        }
+        final Chromosome chrA = chr1, chrB = chr2;
+        final GreedyAlg iAlg = new GreedyAlg(2, gap * iPrePro.geneMeanLen);
+        final FamilyIndexCache cache = new FamilyIndexCache();
+        bench("GreedyAlg.search (" + chrA.chr + ", " + chrB.chr + ")", "CHS", rounds, new Case() {
+            long run () {
+                return iAlg.search(chrA, chrB,
+                        cache.get(chrA, iPrePro.filteredColumnMap.get(chrA)),
+                        cache.get(chrB, iPrePro.filteredColumnMap.get(chrB))).size();
+            }
+        });
+    }
+
+    /**
+     * Benchmark rendering into SVG documents through <CODE>SVGWrapper</CODE>, for the largest CHS and
+     * for all CHS of a chromosome in it.
+     */
+    private static void benchRendering (PreProcessor iPrePro, List<CHS> CHSList, int gap, int rounds)
+            throws Exception {
+        if (CHSList.isEmpty()) {
+            return;
+        }
+        PostProcessor iPostPro = new PostProcessor(iPrePro, CHSList, gap);
+        CHS largest = CHSList.get(0);
+        for (CHS iCHS : CHSList) {
+            if (iCHS.size > largest.size) {
+                largest = iCHS;
+            }
+        }
+        Map<Chromosome, Set<CHS>> CHSMap = iPostPro.CHSMap.get(largest.chrA);
+        benchWrapper("SVGWrapper (ChrCHSRendering)", rounds, 
+                new ChrCHSRendering(largest.chrA, CHSMap, iPrePro.chrLengthMap, 0, 1.0));
+        benchWrapper("SVGWrapper (CHSRendering)", rounds,
+                new CHSRendering(largest, iPostPro.getGeneList(largest)));
+    }
+
+    private static void benchWrapper (String name, int rounds, final Rendering iRendering) throws Exception {
+        bench(name, "elements", rounds, new Case() {
+            long run () {
+                SVGWrapper iWrapper = new SVGWrapper();
+                iWrapper.Wrap(iRendering);
+                return iWrapper.getSVGDoc().getElementsByTagName("*").getLength();
+            }
+        });
+    }
+
+    /**
+     * Write a synthetic gene file containing <CODE>scale</CODE> copies of each chromosome in a gene file.
+     * Genes and chromosomes of the copies are renamed with suffixes, and families are kept.
+     * @return a temporary file, to be deleted by the caller
+     */
+    private static File scaleUp (String fileName, int scale) throws IOException {
+        File scaledFile = File.createTempFile("CHSBenchmark", ".txt");
+        scaledFile.deleteOnExit();
+        BufferedReader in = new BufferedReader(new FileReader(fileName));
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(scaledFile)));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 5) {
+                    out.println(line);  // left to the reader to report
+                    continue;
+                }
+                String id = fields[0], chr = fields[4];
+                for (int k = 0; k < scale; k++) {
+                    String suffix = k == 0 ? "" : "_" + k;
+                    fields[0] = id + suffix;
+                    fields[4] = chr + suffix;
+                    StringBuilder sb = new StringBuilder(fields[0]);
+                    for (int i = 1; i < fields.length; i++) {
+                        sb.append('\t').append(fields[i]);
+                    }
+                    out.println(sb);
+                }
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+        return scaledFile;
+    }
+}
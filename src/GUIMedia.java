@@ -18,21 +18,35 @@ public class GUIMedia {
     public List<Chromosome> chrList; // chromosome list
     public boolean intraOrg;    // indicating whether comparison within a Species
     public PreProcessor iPrePro; // PreProcessor object for CHS search
+    public FamilyIndexCache famIndexCache; // family indexes of chromosomes, rebuilt with iPrePro
     public List<CHS> CHSList; // resulted CHS list
     public PostProcessor iPostPro; // PostProcessor object for CHS
     public Ensembl iEnsembl;    // Object to manage Ensembl database
-    public List<SVGWrapper> wrapperList; // SVGWrapper list, each contains a Rendering object
-    public int index; // Current index in wrapperList 
+    public List<Rendering> renderingList; // Rendering history, each shown by an SVGWrapper
+    public int index; // Current index in renderingList 
+    private Map<Rendering, SVGWrapper> wrapperMap; // SVGWrappers of recently shown Renderings; others are re-rendered
     public boolean CHSRunning; // indicating whether the CHS search thread should be running
+    public Metrics metrics; // metrics of phases and chromosome pairs since genes are read
+    
+    public static final int MAX_WRAPPER_NUM = 10; // maximum number of SVGWrappers kept in wrapperMap
     
     /** Construct method */
     public GUIMedia () {
-        this.wrapperList = new ArrayList<SVGWrapper>();
+        this.renderingList = new ArrayList<Rendering>();
+        this.metrics = new Metrics();
+        this.wrapperMap = new LinkedHashMap<Rendering, SVGWrapper>(16, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry<Rendering, SVGWrapper> eldest) {
+                return this.size() > MAX_WRAPPER_NUM;   // SVG documents are heavy, so only recent ones are kept
+            }
+        };
     }
     
     /** Read gene data from file and throw input file exception */
     public void readGeneFile(String fileName) throws Exception {    
+        this.metrics.clear();
+        this.metrics.startPhase("read genes");
         this.chrMap = IO.readGeneFile(fileName);
+        this.metrics.endPhase("read genes");
         this.setChrList();
         
     }
@@ -51,7 +65,10 @@ public class GUIMedia {
     
     /** Fetch gene from Ensembl database */
     public void getEnsemblGene (String[] taxons) throws Exception {
+        this.metrics.clear();
+        this.metrics.startPhase("fetch genes");
         this.chrMap = iEnsembl.getEnsemblGene(taxons);
+        this.metrics.endPhase("fetch genes");
         this.setChrList();
     }
     
@@ -68,9 +85,9 @@ public class GUIMedia {
         return geneTable;
     }
     
-    /** Carry on preprocess for CHS search */
+    /** Carry on preprocess for CHS search and throw exception of genes without ids */
     public void preProcess(List<Integer> indexList, boolean mergeTandem,
-            String nullFamID) {
+            String nullFamID) throws Exception {
         // filter chromosomes indexed in indexList
         //List<Chromosome> chrList = new ArrayList<Chromosome>(this.chrSet);
         List<Chromosome> filteredChrs = new ArrayList<Chromosome>();
@@ -82,8 +99,17 @@ public class GUIMedia {
         this.chrList.removeAll(filteredChrs);
         
         // carry on preprocess
+        this.metrics.startPhase("preprocess");
         this.iPrePro = new PreProcessor(this.chrMap, mergeTandem, nullFamID);
-        this.chrMap = this.iPrePro.rankedChrMap;
+        this.chrMap = PreProcessor.getGeneLists(this.iPrePro.rankedColumnMap);  // views of ranked genes
+        this.metrics.endPhase("preprocess");
+        
+        // invalidate family indexes of the previous preprocess
+        if (this.famIndexCache == null) {
+            this.famIndexCache = new FamilyIndexCache();
+        } else {
+            this.famIndexCache.clear();
+        }
     }
     
     /** Generate another thread to carry on CHS finding */
@@ -107,22 +133,35 @@ public class GUIMedia {
     
     /** Carry on postprocess for resulted CHS */
     public void postProcess (int gapNum) {
-        this.iPostPro = new PostProcessor(this.iPrePro, this.CHSList, gapNum); 
+        this.metrics.startPhase("postprocess");
+        this.iPostPro = new PostProcessor(this.iPrePro, this.CHSList, gapNum);
+        this.metrics.endPhase("postprocess");
     }
     
     /** Write CHS data into file and throw file writing exception */
     public void writeCHSFile (String fileName) throws Exception {
+        this.metrics.startPhase("write CHS");
         IO.writeCHSFile(this.iPostPro, fileName);
+        this.metrics.endPhase("write CHS");
     }
     
-    /** Add a new Wrapper to the list, which contains a new Rendering object */
+    /** Add a new Rendering object to the history and render it */
     private SVGDocument addRendering (Rendering iRendering) {
-        SVGWrapper iWrapper = new SVGWrapper();
-        iWrapper.Wrap(iRendering);
-        SVGDocument doc = iWrapper.getSVGDoc();
-        this.wrapperList.add(iWrapper);
-        this.index = this.wrapperList.size() - 1;   // Point to the last rendering
-        return doc;     
+        this.renderingList.add(iRendering);
+        this.index = this.renderingList.size() - 1;   // Point to the last rendering
+        return this.getWrapper(this.index).getSVGDoc();     
+    }
+    
+    /** Get the SVGWrapper of the indexed Rendering, which is re-rendered if evicted */
+    private SVGWrapper getWrapper (int index) {
+        Rendering iRendering = this.renderingList.get(index);
+        SVGWrapper iWrapper = this.wrapperMap.get(iRendering);
+        if (iWrapper == null) {
+            iWrapper = new SVGWrapper();
+            iWrapper.Wrap(iRendering);
+            this.wrapperMap.put(iRendering, iWrapper);
+        }
+        return iWrapper;
     }
     
     /** Render the indexed CHS in CHSList */ 
@@ -155,16 +194,16 @@ public class GUIMedia {
         }
         
         // Render
-        Rendering iRendering = new ChrCHSRendering(centerChr, iCHSMap, size, pValue);
+        Rendering iRendering = new ChrCHSRendering(centerChr, iCHSMap, this.iPrePro.chrLengthMap, size, pValue);
         return this.addRendering(iRendering);
     }
     
     /** Render the CHS p pointing in ChrCHSRendering or CHSRendering */ 
     public SVGDocument getCHSRendering (Point2D p) {
-        if (this.wrapperList.size() == 0) {
+        if (this.renderingList.size() == 0) {
             return null;
         }
-        Rendering iRendering = this.wrapperList.get(this.index).getRendering();
+        Rendering iRendering = this.renderingList.get(this.index);
         String className = iRendering.getClass().getName();
         if (className.equals("org.biosino.CHS.image.ChrCHSRendering")) {
             ChrCHSRendering iChrCHSRendering = (ChrCHSRendering)iRendering;
@@ -176,7 +215,7 @@ public class GUIMedia {
         } else if (className.equals("org.biosino.CHS.image.CHSRendering")){
             CHSRendering iCHSRendering = (CHSRendering)iRendering;
             iCHSRendering.drawGeneClicked(p);
-            return this.wrapperList.get(this.index).getSVGDoc();
+            return this.getWrapper(this.index).getSVGDoc();
         } else {
             return null;
         }
@@ -184,10 +223,10 @@ public class GUIMedia {
     
     /** Indicate if there is a link at position p in ChrCHSRendering or CHSRendering */
     public boolean pointCHS (Point2D p) {
-        if (this.wrapperList.size() == 0) {
+        if (this.renderingList.size() == 0) {
             return false;
         }
-        Rendering iRendering = this.wrapperList.get(this.index).getRendering();
+        Rendering iRendering = this.renderingList.get(this.index);
         String className = iRendering.getClass().getName();
         if (className.equals("org.biosino.CHS.image.ChrCHSRendering")) {
             ChrCHSRendering iChrCHSRendering = (ChrCHSRendering)iRendering;
@@ -212,7 +251,7 @@ public class GUIMedia {
 
     /** Save current Rendering */
     public void writeCHSRendering (String format, String fileName) throws Exception {
-        SVGWrapper iWrapper = this.wrapperList.get(this.index);
+        SVGWrapper iWrapper = this.getWrapper(this.index);
         if (format.equals("ps")) {  //for .ps format
             PsWrapper iPsWrapper = new PsWrapper(fileName);
             iPsWrapper.Wrap(iWrapper.getRendering()); // rewrap current image using .ps wrapper 
@@ -223,38 +262,38 @@ public class GUIMedia {
     
     /** Nevigate Rendering objects in Wrapper list, backward and forward */
     public SVGDocument nevigateRendering (int orient) {
-        if (this.wrapperList.size() == 0) {
+        if (this.renderingList.size() == 0) {
             return null;
         }
         if (orient < 0 && this.index - 1 >= 0) {
             index--;  
-        } else if (orient > 0 && this.index + 1 <= this.wrapperList.size() - 1) {
+        } else if (orient > 0 && this.index + 1 <= this.renderingList.size() - 1) {
             index++;
         }
-        return this.wrapperList.get(index).getSVGDoc();
+        return this.getWrapper(index).getSVGDoc();
     }
     
     /** Delete current Rendering objects */
     public SVGDocument deleteRendering () {
-        if (this.wrapperList.size() == 0) {
+        if (this.renderingList.size() == 0) {
             return null;
         }
-        this.wrapperList.remove(index);
-        if (this.wrapperList.size() == 0) {
+        this.wrapperMap.remove(this.renderingList.remove(index));
+        if (this.renderingList.size() == 0) {
             return null;
         }
         if (index > 0) {
             index--;
         } 
-        return this.wrapperList.get(index).getSVGDoc();
+        return this.getWrapper(index).getSVGDoc();
     }
     
     /** Judge if local CHS can be shown. This is true only when CHSRendering is shown. */
     public boolean localCHSEnabled () {
-        if (this.wrapperList.size() == 0) {
+        if (this.renderingList.size() == 0) {
             return false;
         }
-        Rendering iRendering = this.wrapperList.get(this.index).getRendering();
+        Rendering iRendering = this.renderingList.get(this.index);
         if (!iRendering.getClass().getName().equals("org.biosino.CHS.image.CHSRendering")) {
             return false;
         }
@@ -267,7 +306,7 @@ public class GUIMedia {
             return null;
         }
         
-        CHSRendering iCHSRendering = (CHSRendering)this.wrapperList.get(this.index).getRendering();
+        CHSRendering iCHSRendering = (CHSRendering)this.renderingList.get(this.index);
         CHS iCHS = iCHSRendering.iCHS;  // current CHS
         Gene[][] geneList = this.iPostPro.getGeneList(iCHS);
         Chromosome chrA = iCHS.chrA, chrB = iCHS.chrB;
@@ -282,9 +321,9 @@ public class GUIMedia {
         }
          
         // Create new CHS
-        GenoLoc locA = new GenoLoc(chrA.tax, chrA.chr, 
+        GenoLoc locA = new GenoLoc(chrA, 
                 this.chrMap.get(chrA).get(--startA).start, this.chrMap.get(chrA).get(--endA).end); 
-        GenoLoc locB = new GenoLoc(chrB.tax, chrB.chr, 
+        GenoLoc locB = new GenoLoc(chrB, 
                 this.chrMap.get(chrB).get(--startB).start, this.chrMap.get(chrB).get(--endB).end); 
         CHS newCHS = new CHS(chrA, chrB, locA, locB);
         geneList = this.iPostPro.getGeneList(newCHS);  
@@ -315,42 +354,38 @@ class findCHSThread extends Thread {
     }
     public void run() {
         (new JoinThread(this, this.component)).start();
-        GreedyAlg iAlg = new GreedyAlg(size, gap);
-        List<Chromosome> chrList = this.iMedia.chrList;
-        iMedia.CHSList = new ArrayList<CHS>();
+        final SearchEngine iEngine = new SearchEngine(size, gap);
+        iEngine.setFamilyIndexCache(iMedia.famIndexCache);
+        iEngine.setCountersRecorded(true);
         
-        // Caculate the length of the progress, depending on comparison inter- or intra- species
-        int progressLength = 0;
-        int currentLength = 0;
-	for (int i = 0; i < chrList.size(); i++) {
-            for (int j = 0; j <= i; j++) {
-                Chromosome chr1 = chrList.get(i);
-		Chromosome chr2 = chrList.get(j);
-                if ((this.intraOrg && chr1.tax.equals(chr2.tax)) ||
-                    (!this.intraOrg && !chr1.tax.equals(chr2.tax))) {
-                            progressLength++;
+        // Update the progress in the event dispatch thread, since pairs are searched in parallel
+        iEngine.setListener(new SearchListener() {
+            public void pairSearched(Chromosome chrA, Chromosome chrB, List<CHS> CHSList,
+                    int done, final int total) {
+                if (!iMedia.CHSRunning) {  // indicating the thread should be stopped
+                    iEngine.stop();
                 }
+                final int value = done * 100 / total;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (value > progressBar.getValue()) {
+                            progressBar.setValue(value);
+                        }
+                    }
+                });
             }
-        }
+        });
         
         // Carry on searching
-        for (int i = 0; i < chrList.size(); i++) {
-            for (int j = 0; j <= i; j++) {
-                if (!this.iMedia.CHSRunning) {  // indicating the thread should be stopped 
-                    break;
-                }
-                
-                Chromosome chr1 = chrList.get(i);
-		Chromosome chr2 = chrList.get(j);
-                if ((this.intraOrg && chr1.tax.equals(chr2.tax)) ||
-                    (!this.intraOrg && !chr1.tax.equals(chr2.tax))) {
-                    List<Gene> list1 = iMedia.iPrePro.filteredChrMap.get(chr1);
-                    List<Gene> list2 = iMedia.iPrePro.filteredChrMap.get(chr2);
-                    iMedia.CHSList.addAll(iAlg.search(chr1, chr2, list1, list2));
-                    progressBar.setValue(++currentLength * 100 / progressLength);
-                }
-            }
-	}
+        iMedia.metrics.clearPairs();
+        iMedia.metrics.startPhase("search");
+        iMedia.CHSList = iEngine.search(this.iMedia.chrList,
+                iMedia.iPrePro.filteredColumnMap, this.intraOrg);
+        iMedia.metrics.endPhase("search");
+        for (PairCounters counters : iEngine.getPairCounters()) {
+            iMedia.metrics.addPair(counters.chrA.tax + ":" + counters.chrA.chr,
+                    counters.chrB.tax + ":" + counters.chrB.chr, counters.toMap());
+        }
     }
 }
 
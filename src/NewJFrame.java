@@ -16,6 +16,7 @@ public class NewJFrame extends javax.swing.JFrame {
         initComponents();
         this.jTabbedPane1.setEnabledAt(1, false);
         this.jTabbedPane1.setEnabledAt(2, false);
+        this.addMetricsButton();
     }
     
     /** This method is called from within the constructor to
@@ -1076,7 +1077,13 @@ public class NewJFrame extends javax.swing.JFrame {
             }
         }
         
-        this.iMedia.preProcess(indexList, mergeTandem, nullFamID);
+        try {
+            this.iMedia.preProcess(indexList, mergeTandem, nullFamID);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), 
+                    "Preprocess exception", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         
         this.jDialog1.setVisible(false);
         this.jButton5.setEnabled(true);
@@ -1191,6 +1198,48 @@ public class NewJFrame extends javax.swing.JFrame {
         }
     }//GEN-LAST:event_jButton9ActionPerformed
 
+    /** Add "Show metrics" to the toolbar in "CHS result" pane, out of the generated code */
+    private void addMetricsButton() {
+        JButton button = new JButton("Metrics");
+        button.setToolTipText("Show metrics...");
+        button.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                showMetrics();
+            }
+        });
+        this.jToolBar2.add(button);
+    }
+
+    /** "Show metrics" in "CHS result" pane: show time, memory and counters, and export them in JSON */
+    private void showMetrics() {
+        JTextArea textArea = new JTextArea(this.iMedia.metrics.toString(), 15, 80);
+        textArea.setEditable(false);
+        textArea.setFont(new java.awt.Font(java.awt.Font.MONOSPACED, java.awt.Font.PLAIN, 12));
+        Object[] options = {"Export JSON...", "Close"};
+        if (JOptionPane.showOptionDialog(this, new JScrollPane(textArea), "Metrics",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[1]) != 0) {
+            return;
+        }
+        File file = new File(this.currentDir.getPath(), "CHSMetrics.json");
+        this.jFileChooser1.setSelectedFile(file);
+        if (this.jFileChooser1.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            file = this.jFileChooser1.getSelectedFile();
+            //if the file existed
+            if (file.exists() && JOptionPane.OK_OPTION != JOptionPane.showConfirmDialog(this.jFileChooser1,
+                    "The file " + file.getPath() + " has existed.\n" 
+                    + "Do you want to rewrite it?")) {
+                return;
+            }
+            //write file
+            try {
+                this.iMedia.metrics.writeJSON(file.getPath());
+            } catch (Exception e) {
+                JOptionPane.showMessageDialog(this, e.getMessage(), 
+                        "File writing exception", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
     /** "Show selected CHS" in "CHS result" dialog */
     private void jButton12ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton12ActionPerformed
         this.setCursor(new java.awt.Cursor(java.awt.Cursor.WAIT_CURSOR));
@@ -0,0 +1,101 @@
+import java.io.*;
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.util.*;
+import org.biosino.CHS.algorithm.*;
+
+/**
+ * The class checks in command line that removing redundant CHS by the sweep
+ * (see {@link GreedyAlg#removeRedund(List, int)}) keeps the same CHS as the former quadratic algorithm
+ * (see {@link GreedyAlg#removeRedundQuadratic}), for every chromosome pair of the bundled data files.
+ * Usage: java RedundCheck [gap]
+ */
+public class RedundCheck {
+
+    private static final String DATA = "data" + File.separator;
+
+    public static void main(String[] args) throws Exception {
+        int gap = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int failures = 0;
+        failures += check(DATA + "input" + File.separator + "9606_15.txt", true, gap);
+        failures += check(DATA + "paralogs.txt", true, gap);
+        failures += check(DATA + "orthologs.txt", false, gap);
+        if (failures > 0) {
+            System.err.println(failures + " chromosome pairs differ");
+            System.exit(1);
+        }
+        System.out.println("All chromosome pairs agree");
+    }
+
+    /**
+     * Check all chromosome pairs of a gene file, enumerated as {@link SearchEngine} does.
+     * @return number of pairs whose results differ
+     */
+    private static int check (String fileName, boolean intraOrg, int gap) throws Exception {
+        PreProcessor iPrePro = new PreProcessor(IO.readGeneFile(fileName), true, "0");
+        Map<Chromosome, GeneColumns> chrMap = iPrePro.filteredColumnMap;
+        List<Chromosome> chrList = new ArrayList<Chromosome>(chrMap.keySet());
+        Collections.sort(chrList);
+        int gapSize = gap * iPrePro.geneMeanLen;
+        FamilyIndexCache cache = new FamilyIndexCache();
+        GreedyAlg iAlg = new GreedyAlg(2, gapSize);
+
+        int pairNum = 0, emittedNum = 0, keptNum = 0, failures = 0;
+        for (int i = 0; i < chrList.size(); i++) {
+            for (int j = 0; j <= i; j++) {
+                Chromosome chr1 = chrList.get(i);
+                Chromosome chr2 = chrList.get(j);
+                if (intraOrg != chr1.tax.equals(chr2.tax)) {
+                    continue;
+                }
+                FamilyIndex index1 = cache.get(chr1, chrMap.get(chr1));
+                FamilyIndex index2 = cache.get(chr2, chrMap.get(chr2));
+                iAlg.setRedundRemoved(false);
+                List<CHS> emitted = iAlg.search(chr1, chr2, index1, index2);
+                List<CHS> expected = GreedyAlg.removeRedundQuadratic(new ArrayList<CHS>(emitted), gapSize);
+                List<CHS> actual = GreedyAlg.removeRedund(new ArrayList<CHS>(emitted), gapSize);
+                iAlg.setRedundRemoved(true);
+                List<CHS> searched = iAlg.search(chr1, chr2, index1, index2);
+
+                pairNum++;
+                emittedNum += emitted.size();
+                keptNum += expected.size();
+                if (!sameObjects(expected, actual) || !sameCHS(expected, searched)) {
+                    failures++;
+                    System.err.println(fileName + ": " + chr1 + " / " + chr2 + ": quadratic keeps " +
+                            expected.size() + " CHS, sweep " + actual.size() + ", search " + searched.size());
+                }
+            }
+        }
+        System.out.println(fileName + ": " + pairNum + " chromosome pairs, " + emittedNum +
+                " CHS emitted, " + keptNum + " kept, " + failures + " pairs differ");
+        return failures;
+    }
+
+    // Whether two lists hold the same objects in the same order
+    private static boolean sameObjects (List<CHS> list1, List<CHS> list2) {
+        if (list1.size() != list2.size()) {
+            return false;
+        }
+        for (int i = 0; i < list1.size(); i++) {
+            if (list1.get(i) != list2.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether two lists hold CHS of the same locations in the same order
+    private static boolean sameCHS (List<CHS> list1, List<CHS> list2) {
+        if (list1.size() != list2.size()) {
+            return false;
+        }
+        for (int i = 0; i < list1.size(); i++) {
+            if (!list1.get(i).toString().equals(list2.get(i).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
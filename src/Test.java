@@ -11,12 +11,14 @@ import org.biosino.CHS.image.*;
  */
 public class Test {
 
+    private static final String OUTPUT = "data" + File.separator + "output" + File.separator;
+
     public static void main(String[] args) throws Exception {
         int gap = 30;        
         
         /* Test input */
         Map<Chromosome, List<Gene>> chrMap =
-                IO.readGeneFile("data\\input\\9606_15.txt");
+                IO.readGeneFile("data" + File.separator + "input" + File.separator + "9606_15.txt");
         List<Chromosome> chrList =
                 new ArrayList<Chromosome>(chrMap.keySet());
 
@@ -35,20 +37,27 @@ public class Test {
 
         /*Test searching for paralogon */
         PreProcessor iPrePro = new PreProcessor(chrMap, true, "0");
-        GreedyAlg iAlg = new GreedyAlg(2, gap * iPrePro.geneMeanLen);
-        List<CHS> CHSList = new ArrayList<CHS>();
-        for (int i = 0; i < chrList.size(); i++) {
-            for (int j = 0; j <= i; j++) {
-                Chromosome chr1 = chrList.get(i);
-                Chromosome chr2 = chrList.get(j);
-                if (!chr1.tax.equals(chr2.tax))
-                    continue;
-                List<Gene> list1 = iPrePro.filteredChrMap.get(chr1);
-                List<Gene> list2 = iPrePro.filteredChrMap.get(chr2);
-
-                CHSList.addAll(iAlg.search(chr1, chr2, list1, list2));
+        
+        /* Test snapshot: preprocessed genes are restored without parsing */
+        GeneSnapshot.write(iPrePro, OUTPUT + "9606_15.snapshot");
+        iPrePro = GeneSnapshot.read(OUTPUT + "9606_15.snapshot");
+        SearchEngine iEngine = new SearchEngine(2, gap * iPrePro.geneMeanLen);
+        
+        /* Test streaming output: CHS are written as chromosome pairs are searched */
+        final CHSWriter iWriter = new CHSWriter(new PostProcessor(iPrePro, gap),
+                OUTPUT + "out3.txt");
+        iEngine.setListener(new SearchListener() {
+            public void pairSearched(Chromosome chrA, Chromosome chrB, List<CHS> CHSList,
+                    int done, int total) {
+                try {
+                    iWriter.write(CHSList);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-        }
+        });
+        List<CHS> CHSList = iEngine.search(chrList, iPrePro.filteredColumnMap, true);
+        iWriter.close();
         Collections.sort(CHSList);  // sort all CHS 
         
         PostProcessor iPostPro = new PostProcessor(iPrePro, CHSList, gap);
@@ -60,12 +69,12 @@ public class Test {
          */
 
         /* Test output */
-        IO.writeCHSFile(CHSList, "data\\output\\out1.txt");
+        IO.writeCHSFile(CHSList, OUTPUT + "out1.txt");
         CHS iCHS = CHSList.get(0);
         Gene[][] geneAry = iPostPro.getGeneList(iCHS);
         for (int i = 0; i < geneAry[3].length; i++) {
             System.out.println(geneAry[3][i]);
         }
-        IO.writeCHSFile(iPostPro, "data\\output\\out2.txt");
+        IO.writeCHSFile(iPostPro, OUTPUT + "out2.txt");
     }
 }
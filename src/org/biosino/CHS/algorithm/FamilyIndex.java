@@ -0,0 +1,110 @@
+package org.biosino.CHS.algorithm;
+
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * This class indexes the genes of a chromosome (see {@link GeneColumns}) by family, which is used to speeding up querying
+ * genes of a family. Families are keyed by their int codes (see {@link Gene#famCode})
+ * in an open addressing hash table. The index is read-only once built, so it can be
+ * shared by concurrent searches.
+ */
+public class FamilyIndex {
+    /**
+     * The indexed genes.
+     */
+	private GeneColumns columns;
+    /**
+     * Family codes of the hash table; -1 for empty slots.
+     */
+	private int[] famCodes;
+    /**
+     * Row indexes of genes for each slot of the hash table, in ascendent order.
+     */
+	private int[][] geneIndexes;
+    /**
+     * The mask to get a slot from a hash value (the table size minus 1).
+     */
+	private int mask;
+
+    /**
+     * Create a new <CODE>FamilyIndex</CODE> object for the genes of a chromosome.
+     * @param columns the ranked genes of a chromosome
+     */
+	public FamilyIndex (GeneColumns columns) {
+		this.columns = columns;
+		int[] famCodes = columns.famCode;
+		int tableSize = 16;
+		while (tableSize < 2 * columns.size) {
+			tableSize <<= 1;
+		}
+		this.mask = tableSize - 1;
+		this.famCodes = new int[tableSize];
+		Arrays.fill(this.famCodes, -1);
+
+		// count genes of each family first, so that each family takes an array of exact size
+		int[] counts = new int[tableSize];
+		for (int i = 0; i < columns.size; i++) {
+			counts[this.slot(famCodes[i])]++;
+		}
+		this.geneIndexes = new int[tableSize][];
+		for (int i = 0; i < tableSize; i++) {
+			if (counts[i] > 0) {
+				this.geneIndexes[i] = new int[counts[i]];
+				counts[i] = 0;
+			}
+		}
+		for (int i = 0; i < columns.size; i++) {
+			int slot = this.slot(famCodes[i]);
+			this.geneIndexes[slot][counts[slot]++] = i;
+		}
+	}
+
+	// Find the slot of a family code, which is taken by the code if it is empty
+	private int slot (int famCode) {
+		int i = (famCode * 0x9E3779B9) & this.mask;
+		while (this.famCodes[i] != famCode) {
+			if (this.famCodes[i] == -1) {
+				this.famCodes[i] = famCode;
+				break;
+			}
+			i = (i + 1) & this.mask;
+		}
+		return i;
+	}
+
+    /**
+     * Get the genes the index is built for.
+     * @return the indexed genes
+     */
+	public GeneColumns getColumns () {
+		return this.columns;
+	}
+
+    /**
+     * Get indexes of genes belonging to a family.
+     * @param famCode family code
+     * @return row indexes of genes in ascendent order; <CODE>null</CODE> if no gene belongs to the family
+     */
+	public int[] get (int famCode) {
+		int i = (famCode * 0x9E3779B9) & this.mask;
+		while (true) {
+			int code = this.famCodes[i];
+			if (code == famCode) {
+				return this.geneIndexes[i];
+			} else if (code == -1) {
+				return null;
+			}
+			i = (i + 1) & this.mask;
+		}
+	}
+
+    /**
+     * Get the number of genes indexed.
+     * @return the number of genes
+     */
+	public int size () {
+		return this.columns.size;
+	}
+}
@@ -0,0 +1,112 @@
+package org.biosino.CHS.algorithm;
+
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * This class caches a <CODE>FamilyIndex</CODE> for each chromosome, so that the index is built
+ * once and shared by all searches involving the chromosome instead of rebuilt for each pair.
+ * The cache holds at most a given number of indexed genes; the least recently used
+ * indexes are evicted beyond that. It is thread-safe.
+ * <P>
+ * An index is only returned for the same genes it was built from, so indexes of a
+ * previous preprocess are never used after the genes are rebuilt. {@link #clear}
+ * should be called when preprocessing is re-run to release them at once.
+ */
+public class FamilyIndexCache {
+    /**
+     * The default maximum number of indexed genes held by the cache.
+     */
+	public static final int DEFAULT_MAX_GENES = 4000000;
+
+    /**
+     * The maximum number of indexed genes held by the cache.
+     */
+	private int maxGenes;
+    /**
+     * The number of indexed genes held by the cache.
+     */
+	private int geneNum;
+    /**
+     * The map from chromosomes to indexes, in the order of access.
+     */
+	private LinkedHashMap<Chromosome, FamilyIndex> indexMap;
+
+    /**
+     * Create a new <CODE>FamilyIndexCache</CODE> object holding at most {@link #DEFAULT_MAX_GENES} genes.
+     */
+	public FamilyIndexCache () {
+		this(DEFAULT_MAX_GENES);
+	}
+
+    /**
+     * Create a new <CODE>FamilyIndexCache</CODE> object.
+     * @param maxGenes the maximum number of indexed genes held by the cache
+     */
+	public FamilyIndexCache (int maxGenes) {
+		this.maxGenes = maxGenes;
+		this.indexMap = new LinkedHashMap<Chromosome, FamilyIndex>(16, 0.75f, true);
+	}
+
+    /**
+     * Get the index of a chromosome. It is built if not cached or cached for other genes.
+     * @param chr a chromosome
+     * @param genes the ranked genes of the chromosome
+     * @return the index of the genes
+     */
+	public FamilyIndex get (Chromosome chr, GeneColumns genes) {
+		synchronized (this) {
+			FamilyIndex index = this.indexMap.get(chr);
+			if (index != null && index.getColumns() == genes) {
+				return index;
+			}
+		}
+
+		// build outside the lock, so that indexes of different chromosomes are built concurrently
+		FamilyIndex index = new FamilyIndex(genes);
+		synchronized (this) {
+			FamilyIndex old = this.indexMap.get(chr);
+			if (old != null && old.getColumns() == genes) {
+				return old;     // built by another thread meanwhile
+			}
+			this.put(chr, index);
+		}
+		return index;
+	}
+
+    /**
+     * Remove all cached indexes.
+     */
+	public synchronized void clear () {
+		this.indexMap.clear();
+		this.geneNum = 0;
+	}
+
+    /**
+     * Get the number of indexed genes held by the cache.
+     * @return the number of genes
+     */
+	public synchronized int getGeneNum () {
+		return this.geneNum;
+	}
+
+	// Put an index into the cache and evict the least recently used ones if necessary
+	private void put (Chromosome chr, FamilyIndex index) {
+		FamilyIndex old = this.indexMap.put(chr, index);
+		if (old != null) {
+			this.geneNum -= old.size();
+		}
+		this.geneNum += index.size();
+
+		Iterator<Map.Entry<Chromosome, FamilyIndex>> it = this.indexMap.entrySet().iterator();
+		while (this.geneNum > this.maxGenes && it.hasNext()) {
+			Map.Entry<Chromosome, FamilyIndex> entry = it.next();
+			if (entry.getValue() == index) {
+				continue;   // the newest index is always kept
+			}
+			this.geneNum -= entry.getValue().size();
+			it.remove();
+		}
+	}
+}
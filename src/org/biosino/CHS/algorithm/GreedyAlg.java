@@ -6,6 +6,12 @@ import org.biosino.CHS.ontology.*;
 
 /**
  * This class uses greedy algorithm to detect CHS between two chromosomes (gene lists).
+ * The CHS being extended is kept in primitive fields and only created as a <CODE>CHS</CODE>
+ * object when it is found.
+ * A <CODE>GreedyAlg</CODE> object keeps the state of the current search, so it must be
+ * confined to a single thread. It can be reused for any number of searches in that thread,
+ * in which case its scratch buffers are reused instead of being allocated for each search
+ * (see {@link #getInstance}).
  */
 public class GreedyAlg {
     /**
@@ -27,13 +33,13 @@ public class GreedyAlg {
 	private Chromosome chrB;
 	
     /**
-     * Gene list A located on chromosome A.
+     * Genes located on chromosome A.
      */
-	private List<Gene> geneListA;
+	private GeneColumns genesA;
     /**
-     * Gene list B located on chromosome B.
+     * Genes located on chromosome B.
      */
-	private List<Gene> geneListB;
+	private GeneColumns genesB;
 
     /**
      * CHS list containing all CHS between the two chromosomes.
@@ -41,9 +47,85 @@ public class GreedyAlg {
 	private List<CHS> CHSList;
 	
     /**
-     * The map between family id to genes, which is used to speeding up querying.
+     * The family index of gene list B, which is used to speeding up querying.
      */
-	private Map<String, Set<Gene>> famMapB;
+	private FamilyIndex famIndexB;
+    /**
+     * Start point of GenoLoc A of the CHS being extended.
+     */
+	private int startA;
+    /**
+     * End point of GenoLoc A of the CHS being extended.
+     */
+	private int endA;
+    /**
+     * Start point of GenoLoc B of the CHS being extended.
+     */
+	private int startB;
+    /**
+     * End point of GenoLoc B of the CHS being extended.
+     */
+	private int endB;
+    /**
+     * The bit set of family codes contained in the CHS being extended, reused for each seed.
+     */
+	private long[] famBits;
+    /**
+     * Family codes contained in the CHS being extended, used to clear <CODE>famBits</CODE>.
+     */
+	private int[] famCodes;
+    /**
+     * Number of families contained in the CHS being extended.
+     */
+	private int famNum;
+    /**
+     * Indicating whether anchors of each CHS are recorded (see {@link CHS#anchors}).
+     */
+	private boolean anchorsRecorded;
+    /**
+     * Anchors of the CHS being extended, as pairs of row indexes.
+     */
+	private int[] anchorRows;
+    /**
+     * Number of anchors of the CHS being extended.
+     */
+	private int anchorNum;
+
+    /**
+     * Indicating whether redundant CHS are removed from search results.
+     */
+	private boolean redundRemoved = true;
+
+    /**
+     * Number of seeds (pairs of genes of the same family) tried in the last search.
+     */
+	private int seedNum;
+    /**
+     * Number of gene pairs merged into CHS being extended in the last search.
+     */
+	private int extensionNum;
+    /**
+     * Number of CHS emitted in the last search, before redundancy is removed.
+     */
+	private int emittedNum;
+    /**
+     * Number of CHS removed as redundant in the last search.
+     */
+	private int redundNum;
+    /**
+     * Wall time(ns) of removing redundancy in the last search.
+     */
+	private long redundTime;
+
+    /**
+     * Search contexts of all threads, one for each pair of parameters.
+     */
+	private static ThreadLocal<Map<Long, GreedyAlg>> contexts = 
+		new ThreadLocal<Map<Long, GreedyAlg>>() {
+			protected Map<Long, GreedyAlg> initialValue () {
+				return new HashMap<Long, GreedyAlg>();
+			}
+		};
 	
     /**
      * Create a new GreedyAlg object.
@@ -53,7 +135,86 @@ public class GreedyAlg {
 	public GreedyAlg (int num, int gapSize) {
             this.sm = num;
             this.gapSize = gapSize;
+            this.famBits = new long[0];
+            this.famCodes = new int[16];
+            this.anchorRows = new int[32];
         }
+
+    /**
+     * Get the <CODE>GreedyAlg</CODE> object of the current thread for the given parameters.
+     * The object is created at the first call and reused afterwards, so it can be used
+     * for concurrent searching as long as it is not passed to other threads.
+     * @param num minimum size of each CHS (number of distinct families).
+     * @param gapSize maximum gap size between two neighboring genes linked in a CHS
+     * @return a <CODE>GreedyAlg</CODE> object confined to the current thread
+     */
+	public static GreedyAlg getInstance (int num, int gapSize) {
+		Map<Long, GreedyAlg> algMap = contexts.get();
+		Long key = ((long)num << 32) | (gapSize & 0xffffffffL);
+		GreedyAlg iAlg = algMap.get(key);
+		if (iAlg == null) {
+			iAlg = new GreedyAlg(num, gapSize);
+			algMap.put(key, iAlg);
+		}
+		return iAlg;
+	}
+        
+    /**
+     * Set whether anchors of each CHS are recorded (see {@link CHS#anchors}). They are not recorded by default.
+     * @param anchorsRecorded <CODE>true</CODE> to record anchors; <CODE>false</CODE> otherwise
+     */
+	public void setAnchorsRecorded (boolean anchorsRecorded) {
+		this.anchorsRecorded = anchorsRecorded;
+	}
+
+    /**
+     * Set whether redundant CHS are removed from search results (see {@link #removeRedund(List, int)}).
+     * They are removed by default; otherwise all CHS emitted are returned unsorted, e.g. for checking.
+     * @param redundRemoved <CODE>true</CODE> to remove redundancy; <CODE>false</CODE> otherwise
+     */
+	public void setRedundRemoved (boolean redundRemoved) {
+		this.redundRemoved = redundRemoved;
+	}
+        
+    /**
+     * Get the number of seeds (pairs of genes of the same family) tried in the last search.
+     * @return number of seeds
+     */
+	public int getSeedNum () {
+		return this.seedNum;
+	}
+
+    /**
+     * Get the number of gene pairs merged into CHS being extended in the last search.
+     * @return number of extensions
+     */
+	public int getExtensionNum () {
+		return this.extensionNum;
+	}
+
+    /**
+     * Get the number of CHS emitted in the last search, before redundancy is removed.
+     * @return number of CHS emitted
+     */
+	public int getEmittedNum () {
+		return this.emittedNum;
+	}
+
+    /**
+     * Get the number of CHS removed as redundant (mergable with a kept one) in the last search.
+     * @return number of CHS removed
+     */
+	public int getRedundNum () {
+		return this.redundNum;
+	}
+
+    /**
+     * Get the wall time(ns) of removing redundant CHS in the last search.
+     * @return the time
+     */
+	public long getRedundTime () {
+		return this.redundTime;
+	}
         
     /**
      * Search all CHS for two chromosomes using greedy algorithm.
@@ -66,107 +227,252 @@ public class GreedyAlg {
      */
 	public List<CHS> search (Chromosome chrA, Chromosome chrB, 
 			List<Gene> geneListA, List<Gene> geneListB) {
+		IdDictionary famDictionary = new IdDictionary();
+		IdDictionary idDictionary = new IdDictionary();
+		FamilyIndex indexA = new FamilyIndex(new GeneColumns(chrA, geneListA, famDictionary, idDictionary));
+		FamilyIndex indexB = geneListB == geneListA ? indexA :
+			new FamilyIndex(new GeneColumns(chrB, geneListB, famDictionary, idDictionary));
+		return this.search(chrA, chrB, indexA, indexB);
+	}
+
+    /**
+     * Search all CHS for two chromosomes using greedy algorithm, given the family indexes
+     * of their genes (see {@link FamilyIndexCache}).
+     * The two chromosomes will be searched by exchange with each other and then redundancy is removed.
+     * @param chrA chromosome A
+     * @param chrB chromosome B
+     * @param indexA family index of genes on chromosome A
+     * @param indexB family index of genes on chromosome B
+     * @return a CHS list containing all CHS
+     */
+	public List<CHS> search (Chromosome chrA, Chromosome chrB,
+			FamilyIndex indexA, FamilyIndex indexB) {
 		
 		this.CHSList = new ArrayList<CHS>();
+		this.seedNum = 0;
+		this.extensionNum = 0;
+		this.redundNum = 0;
                 
                 // Search by exchange A and B
-		this._search(chrA, chrB, geneListA, geneListB);
-		this._search(chrB, chrA, geneListB, geneListA);
+		this._search(chrA, chrB, indexA.getColumns(), indexB);
+		this._search(chrB, chrA, indexB.getColumns(), indexA);
 		
                 // Remove redundancy
-		this.removeRedund();
-		return this.CHSList;
+		this.emittedNum = this.CHSList.size();
+		long time = System.nanoTime();
+		if (this.redundRemoved) {
+			this.CHSList = removeRedund(this.CHSList, this.gapSize);
+		}
+		this.redundNum = this.emittedNum - this.CHSList.size();
+		this.redundTime = System.nanoTime() - time;
+		List<CHS> CHSList = this.CHSList;
+		this.CHSList = null;
+		return CHSList;
 	}
 	
     /**
      * Search two chromosomes by exchange A and B.
      * @param chrA chromosome A
      * @param chrB chromosome B
-     * @param geneListA gene list A
-     * @param geneListB gene list B
+     * @param genesA genes on chromosome A
+     * @param famIndexB family index of genes on chromosome B
      */
 	private void _search (Chromosome chrA, Chromosome chrB,
-			List<Gene> geneListA, List<Gene> geneListB) {
+			GeneColumns genesA, FamilyIndex famIndexB) {
 		this.chrA = chrA;
 		this.chrB = chrB;
-		this.geneListA = geneListA;
-		this.geneListB = geneListB;
+		this.genesA = genesA;
+		this.genesB = famIndexB.getColumns();
+		this.famIndexB = famIndexB;
 		
-		this.famMapB = new HashMap<String, Set<Gene>>();
-		for (Gene gene : geneListB) {
-			if(this.famMapB.get(gene.family) == null) {
-				this.famMapB.put(gene.family, new HashSet<Gene>());
-			}
-			this.famMapB.get(gene.family).add(gene);
-		}
-		
-		for (Gene geneA : geneListA) {
-			this.startsWith(geneA);
+		for (int indexA = 0; indexA < genesA.size; indexA++) {
+			this.startsWith(indexA);
 		}
+
+		// release references to the genes, while the scratch buffers are kept
+		this.genesA = null;
+		this.genesB = null;
+		this.famIndexB = null;
 	}
 
     /**
-     * Start to search for a CHS from a given gene in gene list A.
-     * @param geneA the given gene
+     * Start to search for a CHS from a given gene on chromosome A.
+     * @param indexA row index of the given gene on chromosome A
      */
-	private void startsWith (Gene geneA) {
+	private void startsWith (int indexA) {
 	
-		String famA = geneA.family;
-		int indexA = this.geneListA.indexOf(geneA);
+		GeneColumns genesA = this.genesA;
+		GeneColumns genesB = this.genesB;
+		int famA = genesA.famCode[indexA];
 		
-		if (this.famMapB.get(famA) != null)
-			for(Gene geneB : this.famMapB.get(famA)) {
-				if (!geneA.id.equals(geneB.id)) {
-					Set<String> famSet = new HashSet<String>();
-					CHS tempCHS = new CHS(this.chrA, this.chrB, 
-                                                geneA.toGenoLoc(), geneB.toGenoLoc());
-					famSet.add(famA);
-					this.extend(indexA, tempCHS, famSet);
+		int[] indexesB = this.famIndexB.get(famA);
+		if (indexesB != null)
+			for (int indexB : indexesB) {
+				if (genesA.idCode[indexA] != genesB.idCode[indexB]) {
+					this.seedNum++;
+					this.clearFamilies();
+					this.startA = genesA.start[indexA];
+					this.endA = genesA.end[indexA];
+					this.startB = genesB.start[indexB];
+					this.endB = genesB.end[indexB];
+					this.anchorNum = 0;
+					this.addAnchor(indexA, indexB);
+					this.addFamily(famA);
+					this.extend(indexA);
 				}
 			}
 	}
 
     /**
-     * Search by extending a current CHS.
-     * @param indexA current index in gene list A
-     * @param tempCHS current CHS
-     * @param famSet current families contained in <CODE>tempCHS</CODE>
+     * Search by extending the current CHS, whose GenoLocs are kept in <CODE>startA</CODE>,
+     * <CODE>endA</CODE>, <CODE>startB</CODE> and <CODE>endB</CODE>
+     * and families in <CODE>famBits</CODE>.
+     * @param indexA current row index on chromosome A
      */
-	private void extend (int indexA, CHS tempCHS, Set<String> famSet) {
+	private void extend (int indexA) {
+		GeneColumns genesA = this.genesA;
+		GeneColumns genesB = this.genesB;
 		while (true) {
 			indexA ++;
-			if (indexA >= this.geneListA.size()) {
-				if (famSet.size() >= this.sm && 
-						!tempCHS.overlap(this.gapSize)) {
-					tempCHS.sortLocs();
-					this.CHSList.add(tempCHS);
-				}
+			if (indexA >= genesA.size) {
+				this.emit();
 				break;
 			}
 	
-			Gene nextA = this.geneListA.get(indexA);
-			if (tempCHS.locA.getDist(nextA) > this.gapSize) {
-				if (famSet.size() >= this.sm && 
-						!tempCHS.overlap(this.gapSize)) {
-					tempCHS.sortLocs();
-					this.CHSList.add(tempCHS);
-				}
+			if (getDist(this.startA, this.endA, genesA.start[indexA], genesA.end[indexA]) > this.gapSize) {
+				this.emit();
 				break;
 			}
 
-			String nextFamA = nextA.family;
-			if (this.famMapB.get(nextFamA) != null) {
-				for (Gene nextB : this.famMapB.get(nextFamA)) {
-					if (nextA.id.equals(nextB.id))
+			int nextFamA = genesA.famCode[indexA];
+			int[] nextIndexesB = this.famIndexB.get(nextFamA);
+			if (nextIndexesB != null) {
+				for (int nextIndexB : nextIndexesB) {
+					if (genesA.idCode[indexA] == genesB.idCode[nextIndexB])
 						continue;
-					if (nextB.getDist(tempCHS.locB) > this.gapSize)
+					if (getDist(this.startB, this.endB, genesB.start[nextIndexB], genesB.end[nextIndexB]) > this.gapSize)
 						continue;
-					famSet.add(nextFamA);
-					tempCHS = tempCHS.merge(new CHS(this.chrA, this.chrB, nextA, nextB));
+					this.extensionNum++;
+					this.addFamily(nextFamA);
+					this.merge(genesA.start[indexA], genesA.end[indexA],
+							genesB.start[nextIndexB], genesB.end[nextIndexB]);
+					this.addAnchor(indexA, nextIndexB);
 				}
 			}
 		}
 	}
+
+    /**
+     * Merge a pair of genes into the current CHS (see {@link CHS#merge}).
+     * @param geneStartA start point of the gene on chromosome A
+     * @param geneEndA end point of the gene on chromosome A
+     * @param geneStartB start point of the gene on chromosome B
+     * @param geneEndB end point of the gene on chromosome B
+     */
+	private void merge (int geneStartA, int geneEndA, int geneStartB, int geneEndB) {
+		this.startA = Math.min(this.startA, geneStartA);
+		this.endA = Math.max(this.endA, geneEndA);
+		this.startB = Math.min(this.startB, geneStartB);
+		this.endB = Math.max(this.endB, geneEndB);
+	}
+
+    /**
+     * Add the current CHS to the CHS list if it is large enough and its GenoLocs do not
+     * overlap with each other (see {@link CHS#overlap}). The <CODE>CHS</CODE> object is created here,
+     * with its GenoLocs sorted (see {@link CHS#sortLocs}).
+     */
+	private void emit () {
+		if (this.famNum < this.sm) {
+			return;
+		}
+		boolean sameChr = this.chrA == this.chrB;
+		if (sameChr && getDist(this.startA, this.endA, this.startB, this.endB) <= this.gapSize) {
+			return;
+		}
+		GenoLoc locA = new GenoLoc(this.chrA, this.startA, this.endA);
+		GenoLoc locB = new GenoLoc(this.chrB, this.startB, this.endB);
+		int cmp = sameChr ? this.startA - this.startB : this.chrA.compareTo(this.chrB);
+		CHS iCHS;
+		if (cmp > 0) {
+			iCHS = new CHS(this.chrB, this.chrA, locB, locA);
+			if (this.anchorsRecorded) {
+				iCHS.anchors = CHS.swapAnchors(this.anchorRows, this.anchorNum);
+			}
+		} else {
+			iCHS = new CHS(this.chrA, this.chrB, locA, locB);
+			if (this.anchorsRecorded) {
+				iCHS.anchors = Arrays.copyOf(this.anchorRows, 2 * this.anchorNum);
+			}
+		}
+		this.CHSList.add(iCHS);
+	}
+
+    /**
+     * Add an anchor to the CHS being extended, if anchors are recorded.
+     * Anchors are added in the order of rows on chromosome A and then B.
+     * @param indexA row index of the gene on chromosome A
+     * @param indexB row index of the gene on chromosome B
+     */
+	private void addAnchor (int indexA, int indexB) {
+		if (!this.anchorsRecorded) {
+			return;
+		}
+		if (2 * this.anchorNum == this.anchorRows.length) {
+			this.anchorRows = Arrays.copyOf(this.anchorRows, 4 * this.anchorNum);
+		}
+		this.anchorRows[2 * this.anchorNum] = indexA;
+		this.anchorRows[2 * this.anchorNum + 1] = indexB;
+		this.anchorNum++;
+	}
+
+    /**
+     * Get the distance between two locations at the same chromosome
+     * (see {@link GenoLoc#getDist}).
+     * @param start1 start point of location 1
+     * @param end1 end point of location 1
+     * @param start2 start point of location 2
+     * @param end2 end point of location 2
+     * @return the distance; 0 if they overlap with each other
+     */
+	private static int getDist (int start1, int end1, int start2, int end2) {
+		if (end1 < start2) {
+			return start2 - end1;
+		} else if (start1 > end2) {
+			return start1 - end2;
+		} else {
+			return 0;
+		}
+	}
+	
+    /**
+     * Add a family to the CHS being extended.
+     * @param famCode family code
+     */
+	private void addFamily (int famCode) {
+		int word = famCode >>> 6;
+		if (word >= this.famBits.length) {
+			this.famBits = Arrays.copyOf(this.famBits,
+					Math.max(word + 1, 2 * this.famBits.length));
+		}
+		long bit = 1L << famCode;
+		if ((this.famBits[word] & bit) == 0) {
+			this.famBits[word] |= bit;
+			if (this.famNum == this.famCodes.length) {
+				this.famCodes = Arrays.copyOf(this.famCodes, this.famNum * 2);
+			}
+			this.famCodes[this.famNum++] = famCode;
+		}
+	}
+
+    /**
+     * Remove all families of the CHS being extended, only clearing the bits set.
+     */
+	private void clearFamilies () {
+		for (int i = 0; i < this.famNum; i++) {
+			this.famBits[this.famCodes[i] >>> 6] = 0;
+		}
+		this.famNum = 0;
+	}
 	
 	/*
 	 *  The resursive version of greedy algorithm
@@ -211,22 +517,68 @@ public class GreedyAlg {
 	
 	// the remove redundancy algorithm may not be perfect
     /**
-     * Remove redundancy in CHS list. Two CHS are merged if they can.
+     * Remove redundancy in CHS list. A CHS is removed if it can be merged with a former one
+     * that is kept, in the order of the sorted CHS list.
+     * Since CHS are sorted by the start point of GenoLoc A, a kept CHS whose GenoLoc A ends
+     * more than <CODE>gapSize</CODE> before the start point of the current one can not be merged
+     * with any following CHS either. So the list is swept once, keeping only such candidates active.
+     * @param CHSList CHS of a chromosome pair, which is sorted
+     * @param gapSize maximum gap size between two neighboring genes linked in a CHS
+     * @return the CHS kept, in sorted order
+     */
+	public static List<CHS> removeRedund (List<CHS> CHSList, int gapSize) {
+		Collections.sort(CHSList);
+		List<CHS> keptList = new ArrayList<CHS>(CHSList.size());
+		
+		// kept CHS which may be merged with following ones, ordered by the end point of GenoLoc A
+		PriorityQueue<CHS> activeQueue = new PriorityQueue<CHS>(11, new Comparator<CHS>() {
+			public int compare (CHS c1, CHS c2) {
+				return c1.locA.end < c2.locA.end ? -1 : (c1.locA.end > c2.locA.end ? 1 : 0);
+			}
+		});
+		for (CHS iCHS : CHSList) {
+			while (!activeQueue.isEmpty() &&
+					activeQueue.peek().locA.end < iCHS.locA.start - gapSize) {
+				activeQueue.poll();
+			}
+			boolean redundant = false;
+			for (CHS lastCHS : activeQueue) {
+				if (lastCHS.mergable(iCHS, gapSize)) {
+					redundant = true;
+					break;
+				}
+			}
+			if (!redundant) {
+				keptList.add(iCHS);
+				activeQueue.add(iCHS);
+			}
+		}
+		return keptList;
+	}
+
+    /**
+     * Remove redundancy in CHS list by comparing each CHS with all former ones that are kept.
+     * It is the quadratic algorithm replaced by {@link #removeRedund(List, int)},
+     * kept as a reference for checking that both give the same result.
+     * @param CHSList CHS of a chromosome pair, which is sorted
+     * @param gapSize maximum gap size between two neighboring genes linked in a CHS
+     * @return the CHS kept, in sorted order
      */
-	private void removeRedund () {
-		Collections.sort(this.CHSList);
-		for (int i = 1; i < this.CHSList.size(); i++) {
-			CHS iCHS = this.CHSList.get(i);
+	public static List<CHS> removeRedundQuadratic (List<CHS> CHSList, int gapSize) {
+		Collections.sort(CHSList);
+		List<CHS> keptList = new ArrayList<CHS>(CHSList);
+		for (int i = 1; i < keptList.size(); i++) {
+			CHS iCHS = keptList.get(i);
 			for (int j = i - 1; j >= 0; j --) {
-				CHS lastCHS = this.CHSList.get(j);
-				if (lastCHS.mergable(iCHS, this.gapSize)) {
-					lastCHS = lastCHS.merge(iCHS);
-					this.CHSList.remove(iCHS);
+				CHS lastCHS = keptList.get(j);
+				if (lastCHS.mergable(iCHS, gapSize)) {
+					keptList.remove(i);
 					i --;
 					break;
 				}
 			}
 		}
+		return keptList;
 	}
 }
 
@@ -0,0 +1,98 @@
+package org.biosino.CHS.algorithm;
+
+import java.lang.management.*;
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * This class holds the counters of searching a chromosome pair (see {@link SearchEngine#setCountersRecorded}).
+ */
+public class PairCounters {
+    /**
+     * Chromosome A.
+     */
+	public final Chromosome chrA;
+    /**
+     * Chromosome B.
+     */
+	public final Chromosome chrB;
+    /**
+     * Number of seeds tried (see {@link GreedyAlg#getSeedNum}).
+     */
+	public final int seedNum;
+    /**
+     * Number of gene pairs merged into CHS being extended (see {@link GreedyAlg#getExtensionNum}).
+     */
+	public final int extensionNum;
+    /**
+     * Number of CHS emitted before redundancy is removed (see {@link GreedyAlg#getEmittedNum}).
+     */
+	public final int emittedNum;
+    /**
+     * Number of CHS removed as redundant (see {@link GreedyAlg#getRedundNum}).
+     */
+	public final int redundNum;
+    /**
+     * Wall time(ns) of removing redundant CHS (see {@link GreedyAlg#getRedundTime}).
+     */
+	public final long redundTime;
+    /**
+     * Number of CHS found.
+     */
+	public final int CHSNum;
+    /**
+     * Wall time(ns) of the search, including getting family indexes.
+     */
+	public final long time;
+    /**
+     * Bytes allocated by the thread searching the pair; -1 if not supported by the virtual machine.
+     */
+	public final long allocatedBytes;
+
+	PairCounters (Chromosome chrA, Chromosome chrB, GreedyAlg iAlg, int CHSNum,
+			long time, long allocatedBytes) {
+		this.chrA = chrA;
+		this.chrB = chrB;
+		this.seedNum = iAlg.getSeedNum();
+		this.extensionNum = iAlg.getExtensionNum();
+		this.emittedNum = iAlg.getEmittedNum();
+		this.redundNum = iAlg.getRedundNum();
+		this.redundTime = iAlg.getRedundTime();
+		this.CHSNum = CHSNum;
+		this.time = time;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+    /**
+     * Get the counters as a map from names to values, in the order of the fields.
+     * @return the map
+     */
+	public Map<String, Long> toMap () {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		map.put("seeds", (long)this.seedNum);
+		map.put("extensions", (long)this.extensionNum);
+		map.put("emitted", (long)this.emittedNum);
+		map.put("redundant", (long)this.redundNum);
+		map.put("redundTimeNanos", this.redundTime);
+		map.put("CHS", (long)this.CHSNum);
+		map.put("timeNanos", this.time);
+		map.put("allocatedBytes", this.allocatedBytes);
+		return map;
+	}
+
+    /**
+     * Get the bytes allocated by the current thread so far.
+     * @return the bytes; -1 if not supported by the virtual machine
+     */
+	static long getThreadAllocatedBytes () {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,320 @@
+package org.biosino.CHS.algorithm;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
+
+/**
+ * This class searches CHS for all chromosome pairs of a genome (or genomes) in parallel.
+ * Each chromosome pair is searched as an individual task by the {@link GreedyAlg} object
+ * confined to the worker thread, and all tasks are distributed over a work-stealing fork-join pool.
+ * The merged CHS list is the same as that of searching the pairs one by one.
+ * The search of each pair is recorded by Flight Recorder events (see {@link PairSearchEvent}).
+ */
+public class SearchEngine {
+    /**
+     * Minimum size of each CHS (number of distinct families).
+     */
+	private int sm;
+    /**
+     * Maximum gap size(bp) allowed between neighboring genes linked in a CHS in a gene list.
+     */
+	private int gapSize;
+    /**
+     * Number of threads used for searching.
+     */
+	private int threadNum;
+
+    /**
+     * The listener notified after each chromosome pair is searched, may be null value.
+     */
+	private SearchListener listener;
+    /**
+     * The cache of family indexes shared by all chromosome pairs, may be null value.
+     */
+	private FamilyIndexCache famIndexCache;
+    /**
+     * Indicating whether CHS lists of chromosome pairs are kept and merged as the result of the search.
+     */
+	private boolean resultsKept = true;
+    /**
+     * Indicating whether anchors of each CHS are recorded.
+     */
+	private boolean anchorsRecorded;
+    /**
+     * Indicating whether counters of each chromosome pair are recorded.
+     */
+	private boolean countersRecorded;
+    /**
+     * Counters of chromosome pairs in the last search, in the order of the pairs; null value for pairs skipped.
+     */
+	private List<PairCounters> pairCounters = new ArrayList<PairCounters>();
+    /**
+     * Indicating whether the search should go on. Pairs not started yet are skipped once it is <CODE>false</CODE>.
+     */
+	private volatile boolean running;
+
+    /**
+     * Create a new <CODE>SearchEngine</CODE> object using all available processors.
+     * @param num minimum size of each CHS (number of distinct families).
+     * @param gapSize maximum gap size between two neighboring genes linked in a CHS
+     */
+	public SearchEngine (int num, int gapSize) {
+		this(num, gapSize, Runtime.getRuntime().availableProcessors());
+	}
+
+    /**
+     * Create a new <CODE>SearchEngine</CODE> object.
+     * @param num minimum size of each CHS (number of distinct families).
+     * @param gapSize maximum gap size between two neighboring genes linked in a CHS
+     * @param threadNum number of threads used for searching
+     */
+	public SearchEngine (int num, int gapSize, int threadNum) {
+		this.sm = num;
+		this.gapSize = gapSize;
+		this.threadNum = threadNum > 0 ? threadNum : 1;
+	}
+
+    /**
+     * Set the listener notified after each chromosome pair is searched.
+     * @param listener a thread-safe <CODE>SearchListener</CODE> object
+     */
+	public void setListener (SearchListener listener) {
+		this.listener = listener;
+	}
+
+    /**
+     * Set the cache of family indexes to be used. Indexes in the cache are reused across
+     * searches as long as the gene lists are the same. If it is not set, a new cache is used for each search.
+     * @param famIndexCache a <CODE>FamilyIndexCache</CODE> object
+     */
+	public void setFamilyIndexCache (FamilyIndexCache famIndexCache) {
+		this.famIndexCache = famIndexCache;
+	}
+
+    /**
+     * Set whether CHS lists of chromosome pairs are kept and merged as the result of the search.
+     * If they are not kept, they are only passed to the listener, e.g. to be written as they are
+     * searched, and the search returns an empty list. They are kept by default.
+     * @param resultsKept <CODE>true</CODE> to keep CHS lists; <CODE>false</CODE> otherwise
+     */
+	public void setResultsKept (boolean resultsKept) {
+		this.resultsKept = resultsKept;
+	}
+
+    /**
+     * Set whether anchors (matched gene pairs) of each CHS are recorded (see {@link CHS#anchors}),
+     * which can be used for statistics instead of matching genes again (see <CODE>PostProcessor</CODE>).
+     * They are not recorded by default.
+     * @param anchorsRecorded <CODE>true</CODE> to record anchors; <CODE>false</CODE> otherwise
+     */
+	public void setAnchorsRecorded (boolean anchorsRecorded) {
+		this.anchorsRecorded = anchorsRecorded;
+	}
+
+    /**
+     * Set whether counters of each chromosome pair (see {@link PairCounters}) are recorded,
+     * which are got by {@link #getPairCounters} after the search. They are not recorded by default.
+     * @param countersRecorded <CODE>true</CODE> to record counters; <CODE>false</CODE> otherwise
+     */
+	public void setCountersRecorded (boolean countersRecorded) {
+		this.countersRecorded = countersRecorded;
+	}
+
+    /**
+     * Get counters of chromosome pairs searched in the last search, in the order of the pairs.
+     * @return a list of counters; empty if counters are not recorded
+     */
+	public List<PairCounters> getPairCounters () {
+		List<PairCounters> counters = new ArrayList<PairCounters>();
+		synchronized (this.pairCounters) {
+			for (PairCounters pair : this.pairCounters) {
+				if (pair != null) {
+					counters.add(pair);
+				}
+			}
+		}
+		return counters;
+	}
+
+    /**
+     * Stop the search. Chromosome pairs being searched are finished and others are skipped.
+     */
+	public void stop () {
+		this.running = false;
+	}
+
+    /**
+     * Search all CHS for chromosome pairs in a chromosome list.
+     * The pairs are enumerated in the order of (i, j), j &lt;= i,
+     * and the CHS lists of the pairs are merged in that order.
+     * @param chrList a chromosome list
+     * @param chrMap the map from chromosomes to ranked genes (null family filtered), stored in columns
+     * @param intraOrg <CODE>true</CODE> for comparison within a species; <CODE>false</CODE> between species
+     * @return a CHS list containing all CHS; empty if CHS lists are not kept (see {@link #setResultsKept})
+     */
+	public List<CHS> search (List<Chromosome> chrList, Map<Chromosome, GeneColumns> chrMap,
+			boolean intraOrg) {
+		this.running = true;
+
+                // Enumerate chromosome pairs, depending on comparison inter- or intra- species
+		final List<Chromosome[]> pairs = new ArrayList<Chromosome[]>();
+		for (int i = 0; i < chrList.size(); i++) {
+			for (int j = 0; j <= i; j++) {
+				Chromosome chr1 = chrList.get(i);
+				Chromosome chr2 = chrList.get(j);
+				if ((intraOrg && chr1.tax.equals(chr2.tax)) ||
+					(!intraOrg && !chr1.tax.equals(chr2.tax))) {
+					pairs.add(new Chromosome[] {chr1, chr2});
+				}
+			}
+		}
+
+		final List<List<CHS>> results = new ArrayList<List<CHS>>(
+				Collections.<List<CHS>>nCopies(pairs.size(), null));
+		final AtomicInteger done = new AtomicInteger();
+		synchronized (this.pairCounters) {
+			this.pairCounters.clear();
+			if (this.countersRecorded) {
+				this.pairCounters.addAll(Collections.<PairCounters>nCopies(pairs.size(), null));
+			}
+		}
+		FamilyIndexCache cache = this.famIndexCache != null ? this.famIndexCache : new FamilyIndexCache();
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int i = 0; i < pairs.size(); i++) {
+			tasks.add(new PairTask(i, pairs, chrMap, cache, results, done));
+		}
+
+                // Submit expensive pairs first, so that the pool is not left waiting on a large pair at the end
+		final Map<Chromosome, GeneColumns> sizeMap = chrMap;
+		Collections.sort(tasks, new Comparator<Callable<Object>>() {
+			public int compare (Callable<Object> t1, Callable<Object> t2) {
+				long c1 = ((PairTask)t1).cost(sizeMap);
+				long c2 = ((PairTask)t2).cost(sizeMap);
+				return c1 > c2 ? -1 : (c1 < c2 ? 1 : 0);
+			}
+		});
+
+		ForkJoinPool pool = new ForkJoinPool(this.threadNum);
+		try {
+			for (Future<Object> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+                // Merge results in the order of chromosome pairs
+		List<CHS> CHSList = new ArrayList<CHS>();
+		for (List<CHS> result : results) {
+			if (result != null) {
+				CHSList.addAll(result);
+			}
+		}
+		return CHSList;
+	}
+
+    /**
+     * The task searching a single chromosome pair.
+     */
+	private class PairTask implements Callable<Object> {
+		private int index;
+		private List<Chromosome[]> pairs;
+		private Map<Chromosome, GeneColumns> chrMap;
+		private FamilyIndexCache cache;
+		private List<List<CHS>> results;
+		private AtomicInteger done;
+
+		PairTask (int index, List<Chromosome[]> pairs, Map<Chromosome, GeneColumns> chrMap,
+				FamilyIndexCache cache, List<List<CHS>> results, AtomicInteger done) {
+			this.index = index;
+			this.pairs = pairs;
+			this.chrMap = chrMap;
+			this.cache = cache;
+			this.results = results;
+			this.done = done;
+		}
+
+		// Estimated cost of the pair, proportional to the product of gene numbers
+		long cost (Map<Chromosome, GeneColumns> sizeMap) {
+			Chromosome[] pair = this.pairs.get(this.index);
+			return (long)sizeMap.get(pair[0]).size * sizeMap.get(pair[1]).size;
+		}
+
+		public Object call () {
+			if (!SearchEngine.this.running) {  // indicating the search should be stopped
+				return null;
+			}
+			boolean counted = SearchEngine.this.countersRecorded;
+			long time = counted ? System.nanoTime() : 0;
+			long bytes = counted ? PairCounters.getThreadAllocatedBytes() : 0;
+			Chromosome chr1 = this.pairs.get(this.index)[0];
+			Chromosome chr2 = this.pairs.get(this.index)[1];
+			int geneNum1 = this.chrMap.get(chr1).size;
+			int geneNum2 = this.chrMap.get(chr2).size;
+			PairSearchStartEvent startEvent = new PairSearchStartEvent();
+			if (startEvent.shouldCommit()) {
+				startEvent.taxA = chr1.tax;
+				startEvent.chrA = chr1.chr;
+				startEvent.taxB = chr2.tax;
+				startEvent.chrB = chr2.chr;
+				startEvent.geneNumA = geneNum1;
+				startEvent.geneNumB = geneNum2;
+				startEvent.commit();
+			}
+			PairSearchEvent event = new PairSearchEvent();
+			event.begin();
+			FamilyIndex index1 = this.cache.get(chr1, this.chrMap.get(chr1));
+			FamilyIndex index2 = this.cache.get(chr2, this.chrMap.get(chr2));
+
+			GreedyAlg iAlg = GreedyAlg.getInstance(SearchEngine.this.sm, SearchEngine.this.gapSize);
+			iAlg.setAnchorsRecorded(SearchEngine.this.anchorsRecorded);
+			List<CHS> CHSList = iAlg.search(chr1, chr2, index1, index2);
+			event.end();
+			if (event.shouldCommit()) {
+				event.taxA = chr1.tax;
+				event.chrA = chr1.chr;
+				event.taxB = chr2.tax;
+				event.chrB = chr2.chr;
+				event.geneNumA = geneNum1;
+				event.geneNumB = geneNum2;
+				event.seedNum = iAlg.getSeedNum();
+				event.extensionNum = iAlg.getExtensionNum();
+				event.emittedNum = iAlg.getEmittedNum();
+				event.redundNum = iAlg.getRedundNum();
+				event.redundTime = iAlg.getRedundTime();
+				event.CHSNum = CHSList.size();
+				event.commit();
+			}
+			if (counted) {
+				long allocated = bytes < 0 ? -1 : PairCounters.getThreadAllocatedBytes() - bytes;
+				PairCounters counters = new PairCounters(chr1, chr2, iAlg, CHSList.size(),
+						System.nanoTime() - time, allocated);
+				synchronized (SearchEngine.this.pairCounters) {
+					if (this.index < SearchEngine.this.pairCounters.size()) {  // not if set during the search
+						SearchEngine.this.pairCounters.set(this.index, counters);
+					}
+				}
+			}
+			if (SearchEngine.this.resultsKept) {
+				synchronized (this.results) {
+					this.results.set(this.index, CHSList);
+				}
+			}
+
+			int n = this.done.incrementAndGet();
+			SearchListener iListener = SearchEngine.this.listener;
+			if (iListener != null) {
+				iListener.pairSearched(chr1, chr2, CHSList, n, this.pairs.size());
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package org.biosino.CHS.algorithm;
+
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * The interface receives notification from a <CODE>SearchEngine</CODE>
+ * each time a chromosome pair has been searched.
+ * Since chromosome pairs are searched in parallel, implementations must be thread-safe.
+ */
+public interface SearchListener {
+
+    /**
+     * Invoked when the search for a chromosome pair is finished.
+     * @param chrA chromosome A
+     * @param chrB chromosome B
+     * @param CHSList a CHS list containing all CHS between the two chromosomes
+     * @param done number of chromosome pairs searched so far
+     * @param total total number of chromosome pairs to be searched
+     */
+    public void pairSearched(Chromosome chrA, Chromosome chrB, List<CHS> CHSList,
+            int done, int total);
+}
@@ -6,6 +6,7 @@ import java.awt.image.*;
 import java.awt.geom.*;
 
 import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
 
 /**
  * This class is used to render a <CODE>CHS</CODE> object, 
@@ -38,9 +39,13 @@ public class CHSRendering implements Rendering{
 	private GenoLocRendering genoLocB;
     
     /**
-     * A map from a rectangular to the gene it represents.
+     * A map from a rectangular to the gene it represents, in the order of drawing.
      */   
         private Map<Rectangle2D.Double, Gene> rectToGene;
+    /**
+     * The index of <CODE>rectToGene</CODE> built in rendering, which is used to find the gene a point located in.
+     */   
+        private RectIndex<Gene> geneIndex;
 	
     /**
      * Create a new <CODE>CHSRendering</CODE> object for the given CHS and carry on all drawings.
@@ -50,7 +55,7 @@ public class CHSRendering implements Rendering{
 	public CHSRendering (CHS iCHS, Gene[][] geneLists) {
 		this.iCHS = iCHS;
 		this.geneLists = geneLists; 
-                this.rectToGene = new HashMap<Rectangle2D.Double, Gene>();
+                this.rectToGene = new LinkedHashMap<Rectangle2D.Double, Gene>();
 	}
         
     /**
@@ -59,7 +64,10 @@ public class CHSRendering implements Rendering{
      * @param g2 a <CODE>Graphics2D</CODE> object
      */
         public void render (Graphics2D g2) {
+                RenderingEvent event = new RenderingEvent();
+                event.begin();
                 this.g2 = g2;
+                this.rectToGene.clear();
                 
                 // draw background
 		this.g2.setColor(Color.white);
@@ -81,6 +89,19 @@ public class CHSRendering implements Rendering{
 		this.drawMatchedGenes(this.geneLists[2], this.geneLists[3], 240, 340, 20);
 		this.g2.setColor(Color.black);
 		this.drawGeneLabels(this.geneLists[2], this.geneLists[3], 900, 240, 360, 220, 380);
+                
+                this.geneIndex = new RectIndex<Gene>(this.rectToGene);
+                
+                event.end();
+                if (event.shouldCommit()) {
+                        Chromosome chrA = this.iCHS.locA.chromosome;
+                        Chromosome chrB = this.iCHS.locB.chromosome;
+                        event.rendering = "CHSRendering";
+                        event.chromosomes = chrA.tax + ":" + chrA.chr + "," + chrB.tax + ":" + chrB.chr;
+                        event.geneNum = this.geneLists[0].length + this.geneLists[1].length;
+                        event.CHSNum = 1;
+                        event.commit();
+                }
         }
 	
     /**
@@ -195,17 +216,15 @@ public class CHSRendering implements Rendering{
     
     /**
      * Get the gene a point located in. The method is used for user interaction from the graphics.
+     * If genes overlap at the point, the one drawn last is returned.
      * @param p a point
-     * @return the gene the point located in
+     * @return the gene the point located in; <CODE>null</CODE> if none or not rendered yet
      */
         public Gene getGeneClicked (Point2D p) {
-                Set<Rectangle2D.Double> rectSet = this.rectToGene.keySet();
-                for (Rectangle2D.Double rect : rectSet) {
-                    if (rect.contains(p)) {
-                        return this.rectToGene.get(rect);
-                    }
+                if (this.geneIndex == null) {
+                    return null;
                 }
-                return null;
+                return this.geneIndex.get(p);
         }
         
      /**
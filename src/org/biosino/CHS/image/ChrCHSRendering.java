@@ -6,6 +6,7 @@ import java.awt.image.*;
 import java.awt.geom.*;
 
 import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
 
 /**
  * The class renders all CHS between a center chromosome and other surrounding chromosomes.
@@ -19,6 +20,10 @@ public class ChrCHSRendering implements Rendering {
      * The map between a surrounding chromosome to its CHS list.
      */
 	private Map<Chromosome, Set<CHS>> CHSMap;
+    /**
+     * The map from chromosomes to their lengths.
+     */
+	private Map<Chromosome, Long> chrLengthMap;
     /**
      * Chromosomes to be rendered on the upper layer.
      */
@@ -29,9 +34,13 @@ public class ChrCHSRendering implements Rendering {
 	private ArrayList<Chromosome> chrListB;
         
     /**
-     * A map from a rectangular to the CHS it represents.
+     * A map from a rectangular to the CHS it represents, in the order of drawing.
      */ 
         private Map<Rectangle2D.Double, CHS> rectToCHS;
+    /**
+     * The index of <CODE>rectToCHS</CODE> built in rendering, which is used to find the CHS a point located in.
+     */ 
+        private RectIndex<CHS> CHSIndex;
 	
     /**
      * The minimum size of CHS to be rendered.
@@ -66,16 +75,18 @@ public class ChrCHSRendering implements Rendering {
      * and carry on all drawings.
      * @param centerChr the chromosome to be rendered on the center layer
      * @param CHSMap the map between a surrounding chromosome to its CHS list
+     * @param chrLengthMap the map from chromosomes to their lengths in the data set
      * @param CHSSize the minimum size of CHS to be rendered
      * @param CHSPValue the maximum p value of CHS to be rendered
      */
 	public ChrCHSRendering(Chromosome centerChr, Map<Chromosome, Set<CHS>> CHSMap,
-                    int CHSSize, double CHSPValue) {
+                    Map<Chromosome, Long> chrLengthMap, int CHSSize, double CHSPValue) {
 		this.centerChr = centerChr;
 		this.CHSMap = CHSMap;
+		this.chrLengthMap = chrLengthMap;
                 this.CHSSize = CHSSize;
                 this.CHSPValue = CHSPValue;
-                this.rectToCHS = new HashMap<Rectangle2D.Double, CHS>();
+                this.rectToCHS = new LinkedHashMap<Rectangle2D.Double, CHS>();
                 
                 // assign chromosomes to upper and lower layers
 		this.chrListA = new ArrayList<Chromosome>();
@@ -97,8 +108,11 @@ public class ChrCHSRendering implements Rendering {
      * @param g2 a <CODE>Graphics2D</CODE> object
      */
         public void render(Graphics2D g2) {
+                RenderingEvent event = new RenderingEvent();
+                event.begin();
                 this.g2 = g2;
                 this.sRendering = new StringRendering(this.g2);
+                this.rectToCHS.clear();
                 
                 // draw backgroud
                 this.g2.setColor(Color.white);
@@ -120,6 +134,20 @@ public class ChrCHSRendering implements Rendering {
                 this.sRendering.midDrawString("Homologous Segments for " +
                         this.centerChr.tax + " Chromosome " + this.centerChr.chr , 500, 550);
                 this.g2.setFont(oldFont);                  
+                
+                this.CHSIndex = new RectIndex<CHS>(this.rectToCHS);
+                
+                event.end();
+                if (event.shouldCommit()) {
+                        StringBuilder chromosomes = new StringBuilder(this.centerChr.tax + ":" + this.centerChr.chr);
+                        for (Chromosome chr : this.CHSMap.keySet()) {
+                                chromosomes.append(',').append(chr.tax).append(':').append(chr.chr);
+                        }
+                        event.rendering = "ChrCHSRendering";
+                        event.chromosomes = chromosomes.toString();
+                        event.CHSNum = this.rectToCHS.size();
+                        event.commit();
+                }
         }
 
     /**
@@ -134,7 +162,7 @@ public class ChrCHSRendering implements Rendering {
 	private void drawCenterChr(Chromosome chr, 
 			double chrRange, double chrMid, double chrHeight, double y, int  location) {
 		this.centerChrRendering = new ChrRendering(
-				chr, this.g2, chrRange, chrMid, chrHeight, y, location);
+				chr, this.chrLengthMap.get(chr), this.g2, chrRange, chrMid, chrHeight, y, location);
 		this.centerChrRendering.drawChr();
 		this.centerChrRendering.drawScale();
 	}
@@ -165,7 +193,8 @@ public class ChrCHSRendering implements Rendering {
                 
                 // draw each chromosome and all CHS between it and center chomosome
 		for (int i = 0; i < chrNum; i++) {
-			ChrRendering rendering = new ChrRendering(chrList.get(i), this.g2,
+			Chromosome chr = chrList.get(i);
+			ChrRendering rendering = new ChrRendering(chr, this.chrLengthMap.get(chr), this.g2,
 					chrRange, chrMid[i], chrHeight, y, location);
 			rendering.drawChr();
 			rendering.drawName();
@@ -188,16 +217,14 @@ public class ChrCHSRendering implements Rendering {
         
     /**
      * Get the CHS a point located in. The method is used for user interaction from the graphics.
+     * If CHS overlap at the point, the one drawn last is returned.
      * @param p a point
-     * @return the CHS the point located in
+     * @return the CHS the point located in; <CODE>null</CODE> if none or not rendered yet
      */
         public CHS getCHSClicked (Point2D p) {
-                Set<Rectangle2D.Double> rectSet = this.rectToCHS.keySet();
-                for (Rectangle2D.Double rect : rectSet) {
-                    if (rect.contains(p)) {
-                        return this.rectToCHS.get(rect);
-                    }
+                if (this.CHSIndex == null) {
+                    return null;
                 }
-                return null;
+                return this.CHSIndex.get(p);
         }
 }
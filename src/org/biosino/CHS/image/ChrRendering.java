@@ -15,6 +15,10 @@ public class ChrRendering {
      * The <CODE>Chromosome</CODE> object to be rendered.
      */
 	private Chromosome chr;
+    /**
+     * The length of the chromosome.
+     */
+	private long length;
 	
     /**
      * A <CODE>Gaphics2D</CODE> object representing the graphic device.
@@ -49,6 +53,7 @@ public class ChrRendering {
     /**
      * Create a new <CODE>ChrRendering</CODE> object.
      * @param chr the <CODE>Chromosome</CODE> object to be rendered
+     * @param length the length of the chromosome
      * @param g2 a <CODE>Gaphics2D</CODE> object representing the graphic device
      * @param range the length of the chromosome in the image
      * @param midLoc the x location of the middle point of the chromosome in the image.
@@ -56,12 +61,13 @@ public class ChrRendering {
      * @param y the y location of the chromosome
      * @param location a value indicating which layer the chromosome should take up
      */
-	public ChrRendering (Chromosome chr, Graphics2D g2, double range,
+	public ChrRendering (Chromosome chr, long length, Graphics2D g2, double range,
 			double midLoc, double height, double y, int location) {
 		this.chr = chr;
+		this.length = length;
 		this.g2 = g2;
                 this.sRendering = new StringRendering(g2);
-		this.scale = range / chr.length;
+		this.scale = range / length;
 		this.midLoc = midLoc;
 		this.height = height;
 		this.y = y;
@@ -74,7 +80,7 @@ public class ChrRendering {
      * @return corresponding x point in image coordinates
      */
 	private double transX (double x) {
-		double chrLocMid = (1 + this.chr.length) / 2;
+		double chrLocMid = (1 + this.length) / 2;
 		return (x - chrLocMid) * this.scale + this.midLoc;
 	}
 
@@ -83,7 +89,7 @@ public class ChrRendering {
      */
 	public void drawChr() {
 		double transStart = this.transX(1);
-		double transEnd = this.transX(chr.length);
+		double transEnd = this.transX(this.length);
 		this.g2.draw(new RoundRectangle2D.Double(transStart, this.y, transEnd - transStart, height,
 					0.05 * (transEnd - transStart), height));
 	}
@@ -96,7 +102,7 @@ public class ChrRendering {
 		double labelDist = 0.6 * this.height;	
 		int scaleNum = this.getScaleNum();
 		double transStart = this.transX(1);
-		double scaleUnit = this.chr.length * this.scale / scaleNum;
+		double scaleUnit = this.length * this.scale / scaleNum;
 		for (int i = 1; i < scaleNum; i ++) {
 			this.g2.draw(new Line2D.Double(transStart + i * scaleUnit, y,
 						transStart + i * scaleUnit, y + verticalLength));
@@ -109,7 +115,7 @@ public class ChrRendering {
 		Font font = this.g2.getFont();
 		FontMetrics metrix = this.g2.getFontMetrics(font);
 		int scaleWidth = 2 * metrix.stringWidth("xxxM");
-		return (int)(this.chr.length * this.scale / scaleWidth);
+		return (int)(this.length * this.scale / scaleWidth);
 	}
         
     /**
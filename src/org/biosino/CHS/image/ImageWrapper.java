@@ -5,6 +5,8 @@ import java.awt.*;
 import java.awt.image.*;
 import javax.imageio.*;
 
+import org.biosino.CHS.jfr.*;
+
 /**
  * Wrap an image using bitmap format.
  */
@@ -56,7 +58,10 @@ public class ImageWrapper implements Wrapper {
      * @throws java.io.IOException IOException
      */
     public void saveRendering(String format, String fileName) throws IOException {
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
         File file = new File(fileName);
         ImageIO.write(this.image, format, file);
+        event.commit("write image", fileName, 0, 0);
     }
 }
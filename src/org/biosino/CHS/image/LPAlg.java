@@ -1,5 +1,7 @@
 package org.biosino.CHS.image;
 
+import java.util.*;
+
 import drasys.or.matrix.*;
 import drasys.or.mp.*;
 import drasys.or.mp.lp.*;
@@ -24,12 +26,70 @@ public class LPAlg {
      * calculate their corresponding label locations (y0, y1, y2, y3). Both types of 
      * locations can be negative.The distance between two neigboring lables must 
      * be greater than (<CODE>double dist</CODE>) to avoid overlap. 
-     * Linear programming is used to achieve the goal.
+     * The total distance between genes and their labels is minimized exactly as
+     * {@link #getLabLocSimplex} does, but in O(n log n) time.
      * @param x gene locations, which must be ascendent ordered.
      * @param dist the minimum distance between neigboring lables, which must be positive.
-     * @return corresponding label locations; null if wrong parameters are provided or exception happens.
+     * @return corresponding label locations; null if wrong parameters are provided.
      */
     
+    /* Principle:
+     * let zi = yi - i * dist and ai = xi - i * dist, then the problem becomes
+     *   min |z0 - a0| + |z1 - a1| + |z2 - a2| + |z3 - a3|
+     *   z0 <= z1 <= z2 <= z3
+     * which is L1 isotonic regression. Adjacent violators are pooled with a max heap:
+     * after ai is added, the top of the heap is the median of the last pool, which is
+     * the best zi given z0..zi only. Lowering it when a later pool has a smaller median
+     * (going backwards) gives the optimal z.
+     */
+    public static double[] getLabLoc (double[] x, double dist) {
+	// check the parameter condition
+	if (dist < 0) {
+		System.err.println("Error: distance must >= 0");
+		return null;
+	}
+	int xNum = x.length;
+        if (xNum == 0) {
+            return null;
+        }
+	for (int i = 0; i < xNum; i++) {
+		if (i > 0 && x[i] < x[i - 1]) {
+			System.out.println("Error: x must be in ascendent order");
+			return null;
+		}
+	}
+	
+	// pool adjacent violators forwards
+	PriorityQueue<Double> heap = new PriorityQueue<Double>(xNum, Collections.reverseOrder());
+	double[] z = new double[xNum];
+	for (int i = 0; i < xNum; i++) {
+		double a = x[i] - i * dist;
+		heap.add(a);
+		if (heap.peek() > a) {
+			heap.poll();
+			heap.add(a);
+		}
+		z[i] = heap.peek();
+	}
+	
+	// make z ascendent backwards and caculate y = z + i * dist
+	double[] y = new double[xNum];
+	for (int i = xNum - 1; i >= 0; i--) {
+		if (i < xNum - 1 && z[i] > z[i + 1]) {
+			z[i] = z[i + 1];
+		}
+		y[i] = z[i] + i * dist;
+	}
+	return y;
+    }
+    
+    /**
+     * The same as {@link #getLabLoc}, but linear programming is used to achieve the goal,
+     * which takes cubic time in the number of genes. It is kept for comparison.
+     * @param x gene locations, which must be ascendent ordered.
+     * @param dist the minimum distance between neigboring lables, which must be positive.
+     * @return corresponding label locations; null if wrong parameters are provided or exception happens.
+     */
     /* Linear Programming principle:
      * remember to sort x0, x1, x2, x3. first
      * 
@@ -94,7 +154,7 @@ public class LPAlg {
      *     dnp constrains:
      *       dn0, dn1, dn2, dn3 >= 0
      */
-    public static double[] getLabLoc (double[] x, double dist) {
+    public static double[] getLabLocSimplex (double[] x, double dist) {
 	// check the parameter condition
 	if (dist < 0) {
 		System.err.println("Error: distance must >= 0");
@@ -7,6 +7,8 @@ import javax.print.*;
 import javax.print.attribute.*;
 import javax.print.attribute.standard.*;
 
+import org.biosino.CHS.jfr.*;
+
 /**
  * Wrap an image using post script format (vector map).
  */
@@ -32,6 +34,8 @@ public class PsWrapper implements Printable, Wrapper {
 
     public void Wrap(Rendering iRendering) throws Exception {
         this.iRendering = iRendering;
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
 
         /* Use the pre-defined flavor for a Printable from an InputStream */
         DocFlavor flavor = DocFlavor.SERVICE_FORMATTED.PRINTABLE;
@@ -58,6 +62,7 @@ public class PsWrapper implements Printable, Wrapper {
 
         pj.print(doc, aset);
         fos.close();
+        event.commit("write image", this.psFile, 0, 0);
     }
     
     public int print(Graphics g, PageFormat pf, int pageIndex) {
@@ -0,0 +1,113 @@
+package org.biosino.CHS.image;
+
+import java.util.*;
+import java.awt.geom.*;
+
+/**
+ * This class indexes rectangles drawn in an image by a uniform grid, so that the rectangle
+ * a point located in is found without scanning all rectangles. Each rectangle is put into
+ * the hashed cells it overlaps, except very large ones, which are always checked.
+ * If a point is located in several rectangles, the one drawn last (on the top) is found.
+ */
+class RectIndex<T> {
+    /**
+     * The width and height of a cell in the image.
+     */
+	private static final double CELL_SIZE = 16;
+    /**
+     * The maximum number of cells a rectangle is put into.
+     */
+	private static final long MAX_CELL_NUM = 1024;
+
+    /**
+     * Rectangles in the order they are drawn.
+     */
+	private List<Rectangle2D.Double> rects;
+    /**
+     * The objects the rectangles represent.
+     */
+	private List<T> values;
+    /**
+     * The map from a cell to the indexes of rectangles overlapping it, in ascendent order.
+     */
+	private Map<Long, List<Integer>> cells;
+    /**
+     * The indexes of rectangles overlapping too many cells, in ascendent order.
+     */
+	private List<Integer> largeRects;
+
+    /**
+     * Create a new <CODE>RectIndex</CODE> object for rectangles and the objects they represent.
+     * @param rectMap a map from rectangles to objects, iterated in the order the rectangles are drawn
+     */
+	RectIndex (Map<Rectangle2D.Double, T> rectMap) {
+		this.rects = new ArrayList<Rectangle2D.Double>(rectMap.size());
+		this.values = new ArrayList<T>(rectMap.size());
+		this.cells = new HashMap<Long, List<Integer>>();
+		this.largeRects = new ArrayList<Integer>();
+		for (Map.Entry<Rectangle2D.Double, T> entry : rectMap.entrySet()) {
+			Rectangle2D.Double rect = entry.getKey();
+			if (rect.isEmpty()) {
+				continue;   // no point is located in it
+			}
+			int index = this.rects.size();
+			this.rects.add(rect);
+			this.values.add(entry.getValue());
+
+			if ((rect.width / CELL_SIZE + 2) * (rect.height / CELL_SIZE + 2) > MAX_CELL_NUM) {
+				this.largeRects.add(index);
+				continue;
+			}
+			long minX = cell(rect.getMinX());
+			long maxX = cell(rect.getMaxX());
+			long minY = cell(rect.getMinY());
+			long maxY = cell(rect.getMaxY());
+			for (long x = minX; x <= maxX; x++) {
+				for (long y = minY; y <= maxY; y++) {
+					Long key = key(x, y);
+					List<Integer> list = this.cells.get(key);
+					if (list == null) {
+						list = new ArrayList<Integer>(2);
+						this.cells.put(key, list);
+					}
+					list.add(index);
+				}
+			}
+		}
+	}
+
+    /**
+     * Get the object represented by the top rectangle a point located in.
+     * @param p a point
+     * @return the object; <CODE>null</CODE> if the point is not located in any rectangle
+     */
+	T get (Point2D p) {
+		int index = this.findLast(this.cells.get(key(cell(p.getX()), cell(p.getY()))), p);
+		index = Math.max(index, this.findLast(this.largeRects, p));
+		return index < 0 ? null : this.values.get(index);
+	}
+
+	// The last index in the list whose rectangle contains the point; -1 if none
+	private int findLast (List<Integer> indexes, Point2D p) {
+		if (indexes == null) {
+			return -1;
+		}
+		for (int i = indexes.size() - 1; i >= 0; i--) {
+			int index = indexes.get(i);
+			if (this.rects.get(index).contains(p)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	// The cell of a coordinate
+	private static long cell (double coord) {
+		return (long)Math.floor(coord / CELL_SIZE);
+	}
+
+	// The hash key of a cell
+	private static Long key (long x, long y) {
+		return (x << 32) ^ (y & 0xffffffffL);
+	}
+}
@@ -8,6 +8,8 @@ import org.apache.batik.dom.svg.*;
 import org.w3c.dom.*;
 import org.w3c.dom.svg.*;
 
+import org.biosino.CHS.jfr.*;
+
 /**
  * Wrap an image using scalar vector graphics (svg) format.
  */
@@ -61,8 +63,12 @@ public class SVGWrapper implements Wrapper {
      * @throws java.io.IOException IOException
      */
     public void saveRendering(String fileName) throws IOException {
+        FileIOEvent event = new FileIOEvent();
+        event.begin();
         PrintWriter out = new PrintWriter(new BufferedWriter(
             new FileWriter(fileName)));
         this.g2.stream(this.doc.getDocumentElement(), out);
+        out.close();
+        event.commit("write image", fileName, 0, 0);
     }
 }
@@ -0,0 +1,53 @@
+package org.biosino.CHS.jfr;
+
+import java.io.*;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event of reading or writing a whole file, such as a gene file, a CHS file,
+ * a snapshot or an image.
+ */
+@Name("org.biosino.CHS.FileIO")
+@Label("CHSMiner File IO")
+@Category({"CHSMiner", "File IO"})
+public class FileIOEvent extends Event {
+	@Label("Operation")
+	@Description("What is read or written, e.g. \"read genes\" or \"write CHS\"")
+	public String operation;
+
+	@Label("Path")
+	public String path;
+
+	@Label("File Size")
+	@DataAmount
+	public long bytes;
+
+	@Label("Genes")
+	@Description("Number of genes read or written")
+	public int geneNum;
+
+	@Label("CHS")
+	@Description("Number of CHS read or written")
+	public int CHSNum;
+
+    /**
+     * Set the fields and commit the event, if it is enabled and its duration exceeds the threshold.
+     * The file size is got from the file system then, so the file should be closed.
+     * @param operation what is read or written
+     * @param fileName the file name
+     * @param geneNum number of genes read or written
+     * @param CHSNum number of CHS read or written
+     */
+	public void commit (String operation, String fileName, int geneNum, int CHSNum) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.operation = operation;
+			this.path = fileName;
+			this.bytes = new File(fileName).length();
+			this.geneNum = geneNum;
+			this.CHSNum = CHSNum;
+			this.commit();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.biosino.CHS.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event of searching CHS between a chromosome pair, committed when the search ends.
+ * A pair searched for long is found by the duration, and a pair on which a search stalls by a
+ * {@link PairSearchStartEvent} without the corresponding <CODE>PairSearchEvent</CODE> in the same thread.
+ */
+@Name("org.biosino.CHS.PairSearch")
+@Label("Chromosome Pair Search")
+@Category({"CHSMiner", "Search"})
+@StackTrace(false)
+public class PairSearchEvent extends Event {
+	@Label("Taxonomy A")
+	public String taxA;
+
+	@Label("Chromosome A")
+	public String chrA;
+
+	@Label("Taxonomy B")
+	public String taxB;
+
+	@Label("Chromosome B")
+	public String chrB;
+
+	@Label("Genes A")
+	@Description("Number of genes on chromosome A after preprocess")
+	public int geneNumA;
+
+	@Label("Genes B")
+	@Description("Number of genes on chromosome B after preprocess")
+	public int geneNumB;
+
+	@Label("Seeds")
+	@Description("Number of seeds tried")
+	public int seedNum;
+
+	@Label("Extensions")
+	@Description("Number of gene pairs merged into CHS being extended")
+	public int extensionNum;
+
+	@Label("Emitted CHS")
+	@Description("Number of CHS emitted before redundancy is removed")
+	public int emittedNum;
+
+	@Label("Redundant CHS")
+	@Description("Number of CHS removed as redundant")
+	public int redundNum;
+
+	@Label("Redundancy Removal Time")
+	@Description("Wall time of removing redundant CHS")
+	@Timespan(Timespan.NANOSECONDS)
+	public long redundTime;
+
+	@Label("CHS")
+	@Description("Number of CHS found")
+	public int CHSNum;
+}
@@ -0,0 +1,33 @@
+package org.biosino.CHS.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event committed when the search of a chromosome pair starts
+ * (see {@link PairSearchEvent}).
+ */
+@Name("org.biosino.CHS.PairSearchStart")
+@Label("Chromosome Pair Search Start")
+@Category({"CHSMiner", "Search"})
+@StackTrace(false)
+public class PairSearchStartEvent extends Event {
+	@Label("Taxonomy A")
+	public String taxA;
+
+	@Label("Chromosome A")
+	public String chrA;
+
+	@Label("Taxonomy B")
+	public String taxB;
+
+	@Label("Chromosome B")
+	public String chrB;
+
+	@Label("Genes A")
+	@Description("Number of genes on chromosome A after preprocess")
+	public int geneNumA;
+
+	@Label("Genes B")
+	@Description("Number of genes on chromosome B after preprocess")
+	public int geneNumB;
+}
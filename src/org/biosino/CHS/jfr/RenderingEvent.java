@@ -0,0 +1,28 @@
+package org.biosino.CHS.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event of rendering an image, e.g. of a CHS or of CHS around a chromosome.
+ */
+@Name("org.biosino.CHS.Rendering")
+@Label("CHSMiner Rendering")
+@Category({"CHSMiner", "Rendering"})
+@StackTrace(false)
+public class RenderingEvent extends Event {
+	@Label("Rendering")
+	@Description("Simple class name of the rendering")
+	public String rendering;
+
+	@Label("Chromosomes")
+	@Description("Chromosomes rendered, as taxonomy:chromosome separated by ','")
+	public String chromosomes;
+
+	@Label("Genes")
+	@Description("Number of genes drawn")
+	public int geneNum;
+
+	@Label("CHS")
+	@Description("Number of CHS drawn")
+	public int CHSNum;
+}
@@ -0,0 +1,20 @@
+package org.biosino.CHS.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * The Flight Recorder event of calculating size and p-value for a batch of CHS in postprocess.
+ */
+@Name("org.biosino.CHS.StatBatch")
+@Label("CHS Statistics Batch")
+@Category({"CHSMiner", "Postprocess"})
+@StackTrace(false)
+public class StatBatchEvent extends Event {
+	@Label("CHS")
+	@Description("Number of CHS in the batch")
+	public int CHSNum;
+
+	@Label("Matched Genes")
+	@Description("Number of matched gene pairs in all CHS of the batch")
+	public int geneNum;
+}
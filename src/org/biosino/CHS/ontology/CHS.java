@@ -32,6 +32,14 @@ public class CHS implements Comparable<CHS> {
      * Statistical p-value of the CHS.
      */
 	public double pValue;
+    /**
+     * Anchors (matched gene pairs) found when the CHS is searched, which are recorded only on demand
+     * (see <CODE>SearchEngine.setAnchorsRecorded</CODE>); <CODE>null</CODE> if not recorded.
+     * The i-th anchor is the pair of genes at row <CODE>anchors[2 * i]</CODE> on chromosome A and
+     * row <CODE>anchors[2 * i + 1]</CODE> on chromosome B, in the genes searched (i.e. genes with null
+     * family filtered, see <CODE>PreProcessor.filteredColumnMap</CODE>). Anchors are sorted by the rows.
+     */
+	public int[] anchors;
 	
     /**
      * Construct a new CHS object.
@@ -72,7 +80,30 @@ public class CHS implements Comparable<CHS> {
 			GenoLoc tempLoc = this.locA;
 			this.locA = this.locB;
 			this.locB = tempLoc;
+			if (this.anchors != null) {
+				this.anchors = swapAnchors(this.anchors, this.anchors.length / 2);
+			}
+		}
+	}
+        
+    /**
+     * Exchange chromosome A and B of anchors and sort them again.
+     * @param anchors anchors (see {@link #anchors})
+     * @param num number of anchors
+     * @return a new anchor array with A and B exchanged
+     */
+	public static int[] swapAnchors (int[] anchors, int num) {
+		long[] keys = new long[num];
+		for (int i = 0; i < num; i++) {
+			keys[i] = ((long)anchors[2 * i + 1] << 32) | anchors[2 * i];
+		}
+		Arrays.sort(keys);
+		int[] swapped = new int[2 * num];
+		for (int i = 0; i < num; i++) {
+			swapped[2 * i] = (int)(keys[i] >>> 32);
+			swapped[2 * i + 1] = (int)keys[i];
 		}
+		return swapped;
 	}
         
     /**
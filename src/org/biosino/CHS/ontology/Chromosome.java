@@ -1,44 +1,108 @@
 package org.biosino.CHS.ontology;
 
+import java.util.concurrent.*;
+
 /**
- * This class describes the chromosomes.
+ * This class describes the chromosomes. Chromosomes are interned: there is only one
+ * <CODE>Chromosome</CODE> object for each taxonomy and chromosome name, which is got by
+ * {@link #getInstance}. So chromosomes can be compared by identity and used as hash keys cheaply.
+ * Chromosomes are immutable and shared by all data sets, so the state of a chromosome in a data set
+ * (e.g. its length) is kept by the data set.
  */
 public class Chromosome implements Comparable<Chromosome> {
+    /**
+     * The registry from taxonomy name to chromosome name to the chromosome.
+     */
+	private static final ConcurrentMap<String, ConcurrentMap<String, Chromosome>> registry =
+		new ConcurrentHashMap<String, ConcurrentMap<String, Chromosome>>();
+    /**
+     * Number of chromosomes in the registry.
+     */
+	private static int count;
+
     /**
      * Taxonomy name.
      */
-	public String tax;
+	public final String tax;
     /**
      * Chromosome name.
      */
-	public String chr;
+	public final String chr;
     /**
-     * Chromosome length.
+     * Ordinal of the chromosome in the registry, from 0 in the order of creation.
      */
-	public long length; 
+	public final int ordinal;
+	
     /**
      * Construct a new chromosome.
      * @param tax taxonomy name
      * @param chr chromosome name
+     * @param ordinal ordinal in the registry
      */
-	public Chromosome (String tax, String chr) {
+	private Chromosome (String tax, String chr, int ordinal) {
 		this.tax = tax;
 		this.chr = chr;
+		this.ordinal = ordinal;
+	}
+    /**
+     * Get the chromosome of a taxonomy and chromosome name. It is created if not exists.
+     * @param tax taxonomy name
+     * @param chr chromosome name
+     * @return the only <CODE>Chromosome</CODE> object of the name
+     */
+	public static Chromosome getInstance (String tax, String chr) {
+		ConcurrentMap<String, Chromosome> chrMap = registry.get(tax);
+		if (chrMap != null) {
+			Chromosome chromosome = chrMap.get(chr);
+			if (chromosome != null) {
+				return chromosome;
+			}
+		}
+		synchronized (registry) {
+			chrMap = registry.get(tax);
+			if (chrMap == null) {
+				chrMap = new ConcurrentHashMap<String, Chromosome>();
+				registry.put(tax, chrMap);
+			}
+			Chromosome chromosome = chrMap.get(chr);
+			if (chromosome == null) {
+				chromosome = new Chromosome(tax, chr, count++);
+				chrMap.put(chr, chromosome);
+			}
+			return chromosome;
+		}
+	}
+    /**
+     * Get the number of chromosomes in the registry.
+     * @return number of chromosomes
+     */
+	public static int size () {
+		synchronized (registry) {
+			return count;
+		}
 	}
     /**
      * Judge whether the chromosome is the same as another one.
      * @param other another chromosome object.
      * @return <CODE>true</CODE> if they are the same; <CODE>false</CODE> otherwise
      */
-	public boolean equals (Chromosome other) {
-		if (other == null) {
+	public boolean equals (Object other) {
+		if (this == other) {
+			return true;    // always the case for interned chromosomes
+		} else if (!(other instanceof Chromosome)) {
 			return false;
-		} else if (this.tax.equals(other.tax) && this.chr.equals(other.chr)) {
-			return true;
 		} else {
-			return false;
+			Chromosome otherChr = (Chromosome)other;
+			return this.tax.equals(otherChr.tax) && this.chr.equals(otherChr.chr);
 		}
 	}
+    /**
+     * Get the hash code of the chromosome.
+     * @return the hash code of the taxonomy and chromosome name
+     */
+	public int hashCode () {
+		return 31 * this.tax.hashCode() + this.chr.hashCode();
+	}
     /**
      * Transform the information of the object to an object array.
      * @return an object array containing all fields of the object
@@ -71,7 +135,9 @@ public class Chromosome implements Comparable<Chromosome> {
      * @return the difference according to the comparison rule
      */
         public int compareTo(Chromosome other) {
-                if (!this.tax.equals(other.tax)) {
+                if (this == other) {
+                    return 0;
+                } else if (!this.tax.equals(other.tax)) {
                     return this.tax.compareTo(other.tax);
                 } else if (!this.chr.equals(other.chr)) {
                     return this.chr.compareTo(other.chr);
@@ -12,6 +12,16 @@ public class Gene extends GenoLoc {
      * Family id.
      */
 	public String family;
+    /**
+     * Code of the gene id in the dictionary of the data set (see {@link GeneColumns#idDictionary});
+     * -1 if the gene is not got from columns.
+     */
+	public int idCode = -1;
+    /**
+     * Code of the family id in the dictionary of the data set (see {@link GeneColumns#famDictionary});
+     * -1 if the gene is not got from columns.
+     */
+	public int famCode = -1;
     /**
      * Rank in a chromosome.
      */
@@ -26,7 +36,7 @@ public class Gene extends GenoLoc {
 	public String symbol;
 	
     /**
-     * Construct a new Gene object
+     * Construct a new Gene object.
      * @param id gene id
      * @param family family id
      * @param symbol gene symbol
@@ -44,6 +54,25 @@ public class Gene extends GenoLoc {
 		this.symbol = symbol;
 		this.orient = orient; 
 	}
+
+    /**
+     * Construct a new Gene object on a chromosome.
+     * @param id gene id
+     * @param family family id
+     * @param symbol gene symbol
+     * @param chromosome chromosome
+     * @param orient orient
+     * @param start start point
+     * @param end end point
+     */
+	public Gene (String id, String family, String symbol, Chromosome chromosome,
+			String orient, int start, int end) {
+		super(chromosome, start, end);
+		this.id = id;
+		this.family = family;
+		this.symbol = symbol;
+		this.orient = orient;
+	}
 	
     /**
      * Transform the information of the object to an object array.
@@ -60,6 +89,6 @@ public class Gene extends GenoLoc {
      * @return a <CODE>GenoLoc</CODE> object
      */
         public GenoLoc toGenoLoc() {
-                return new GenoLoc(this.chromosome.tax, this.chromosome.chr, this.start, this.end); 
+                return new GenoLoc(this.chromosome, this.start, this.end); 
         }
 }
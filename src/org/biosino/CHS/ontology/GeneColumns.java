@@ -0,0 +1,223 @@
+package org.biosino.CHS.ontology;
+
+import java.util.*;
+
+/**
+ * This class stores a ranked gene list of a chromosome column by column in primitive arrays
+ * (struct of arrays), so that algorithms can scan genes without touching <CODE>Gene</CODE> objects.
+ * A <CODE>Gene</CODE> object is only a view of a row, which is created on demand.
+ * Gene ids and family ids are stored as codes in the dictionaries of the data set.
+ * Symbols may be decoded on demand from a table (e.g. of a snapshot file), and columns selected from
+ * other columns read orients and symbols from them, so they should be read by {@link #getOrient}
+ * and {@link #getSymbol}.
+ * The columns should not be modified once built.
+ */
+public class GeneColumns {
+    /**
+     * The chromosome the genes located on.
+     */
+	public Chromosome chr;
+    /**
+     * Number of genes.
+     */
+	public int size;
+    /**
+     * Start points.
+     */
+	public int[] start;
+    /**
+     * End points.
+     */
+	public int[] end;
+    /**
+     * Family codes in <CODE>famDictionary</CODE>.
+     */
+	public int[] famCode;
+    /**
+     * Gene id codes in <CODE>idDictionary</CODE>.
+     */
+	public int[] idCode;
+    /**
+     * Ranks in the chromosome.
+     */
+	public int[] rank;
+    /**
+     * Orients; <CODE>null</CODE> if the rows are selected from other columns.
+     */
+	public String[] orient;
+    /**
+     * Gene symbols; <CODE>null</CODE> if they are decoded from <CODE>symbolTable</CODE>
+     * or the rows are selected from other columns.
+     */
+	public String[] symbol;
+    /**
+     * The table which gene symbols are decoded from on demand; <CODE>null</CODE> if not used.
+     */
+	public StringTable symbolTable;
+    /**
+     * The dictionary of family ids of the data set.
+     */
+	public IdDictionary famDictionary;
+    /**
+     * The dictionary of gene ids of the data set.
+     */
+	public IdDictionary idDictionary;
+
+    /**
+     * The columns the rows are selected from; <CODE>null</CODE> if not selected.
+     */
+	private GeneColumns source;
+    /**
+     * Row indexes in the columns the rows are selected from; <CODE>null</CODE> if not selected.
+     */
+	private int[] sourceRows;
+
+    /**
+     * Create a new <CODE>GeneColumns</CODE> object from a ranked gene list.
+     * The gene ids and family ids are encoded in the dictionaries, and the genes are not referred to.
+     * @param chr the chromosome the genes located on
+     * @param geneList a ranked gene list
+     * @param famDictionary the dictionary of family ids of the data set
+     * @param idDictionary the dictionary of gene ids of the data set
+     */
+	public GeneColumns (Chromosome chr, List<Gene> geneList,
+			IdDictionary famDictionary, IdDictionary idDictionary) {
+		this(chr, geneList.size(), famDictionary, idDictionary);
+		for (int i = 0; i < this.size; i++) {
+			Gene gene = geneList.get(i);
+			this.start[i] = gene.start;
+			this.end[i] = gene.end;
+			this.famCode[i] = famDictionary.encode(gene.family);
+			this.idCode[i] = idDictionary.encode(gene.id);
+			this.rank[i] = gene.rank;
+			this.orient[i] = gene.orient;
+			this.symbol[i] = gene.symbol;
+		}
+	}
+
+    /**
+     * Create a new <CODE>GeneColumns</CODE> object with empty columns, to be filled by the caller.
+     * @param chr the chromosome the genes located on
+     * @param size number of genes
+     * @param famDictionary the dictionary of family ids of the data set
+     * @param idDictionary the dictionary of gene ids of the data set
+     */
+	public GeneColumns (Chromosome chr, int size, IdDictionary famDictionary, IdDictionary idDictionary) {
+		this(chr, size, famDictionary, idDictionary, null);
+	}
+
+    /**
+     * Create a new <CODE>GeneColumns</CODE> object with empty columns, to be filled by the caller,
+     * whose gene symbols are decoded from a table on demand.
+     * @param chr the chromosome the genes located on
+     * @param size number of genes
+     * @param famDictionary the dictionary of family ids of the data set
+     * @param idDictionary the dictionary of gene ids of the data set
+     * @param symbolTable the table of gene symbols; <CODE>null</CODE> if they are filled in <CODE>symbol</CODE>
+     */
+	public GeneColumns (Chromosome chr, int size, IdDictionary famDictionary, IdDictionary idDictionary,
+			StringTable symbolTable) {
+		this(null, chr, size, famDictionary, idDictionary);
+		this.orient = new String[size];
+		if (symbolTable == null) {
+			this.symbol = new String[size];
+		} else {
+			this.symbolTable = symbolTable;
+		}
+	}
+
+    /**
+     * Create a new <CODE>GeneColumns</CODE> object by selecting rows of other columns.
+     * Int columns are copied, while orients and symbols are read from <CODE>source</CODE>.
+     * @param source the columns to select from
+     * @param rows row indexes in <CODE>source</CODE>, in ascendent order
+     */
+	public GeneColumns (GeneColumns source, int[] rows) {
+		this(source, source.chr, rows.length, source.famDictionary, source.idDictionary);
+		for (int i = 0; i < this.size; i++) {
+			int row = rows[i];
+			this.start[i] = source.start[row];
+			this.end[i] = source.end[row];
+			this.famCode[i] = source.famCode[row];
+			this.idCode[i] = source.idCode[row];
+			this.rank[i] = source.rank[row];
+		}
+		this.sourceRows = rows;
+	}
+
+	// Create int columns, whose rows are selected from source if it is not null
+	private GeneColumns (GeneColumns source, Chromosome chr, int size,
+			IdDictionary famDictionary, IdDictionary idDictionary) {
+		this.chr = chr;
+		this.size = size;
+		this.famDictionary = famDictionary;
+		this.idDictionary = idDictionary;
+		this.start = new int[size];
+		this.end = new int[size];
+		this.famCode = new int[size];
+		this.idCode = new int[size];
+		this.rank = new int[size];
+		this.source = source;
+	}
+
+    /**
+     * Get the row indexes in the columns the rows are selected from
+     * (see {@link #GeneColumns(GeneColumns, int[])}).
+     * @return row indexes, which must not be modified; <CODE>null</CODE> if the rows are not selected
+     */
+	public int[] getSourceRows () {
+		return this.sourceRows;
+	}
+
+    /**
+     * Get the orient of a row.
+     * @param i row index
+     * @return the orient
+     */
+	public String getOrient (int i) {
+		return this.source != null ? this.source.getOrient(this.sourceRows[i]) : this.orient[i];
+	}
+
+    /**
+     * Get the gene symbol of a row.
+     * @param i row index
+     * @return the gene symbol
+     */
+	public String getSymbol (int i) {
+		if (this.source != null) {
+			return this.source.getSymbol(this.sourceRows[i]);
+		}
+		return this.symbol != null ? this.symbol[i] : this.symbolTable.get(i);
+	}
+
+    /**
+     * Get the gene view of a row. A new <CODE>Gene</CODE> object is created for each call,
+     * so the view is not kept by the columns and changing it does not change the columns.
+     * @param i row index
+     * @return the <CODE>Gene</CODE> object of the row
+     */
+	public Gene getGene (int i) {
+		Gene gene = new Gene(this.idDictionary.decode(this.idCode[i]),
+				this.famDictionary.decode(this.famCode[i]), this.getSymbol(i),
+				this.chr, this.getOrient(i), this.start[i], this.end[i]);
+		gene.idCode = this.idCode[i];
+		gene.famCode = this.famCode[i];
+		gene.rank = this.rank[i];
+		return gene;
+	}
+
+    /**
+     * Get the gene views of all rows. The views are created whenever they are got from the list.
+     * @return a read-only gene list backed by the columns
+     */
+	public List<Gene> getGenes () {
+		return new AbstractList<Gene>() {
+			public Gene get (int i) {
+				return GeneColumns.this.getGene(i);
+			}
+			public int size () {
+				return GeneColumns.this.size;
+			}
+		};
+	}
+}
@@ -30,7 +30,16 @@ public class GenoLoc implements Comparable<GenoLoc> {
      * @param end end point
      */
 	public GenoLoc (String tax, String chr, int start, int end) {
-		this.chromosome = new Chromosome(tax, chr);
+		this(Chromosome.getInstance(tax, chr), start, end);
+	}
+    /**
+     * Construct a new GenoLoc object.
+     * @param chromosome chromosome
+     * @param start start point
+     * @param end end point
+     */
+	public GenoLoc (Chromosome chromosome, int start, int end) {
+		this.chromosome = chromosome;
 		if (start > end) {
 			System.out.println("Note: 'start > end' exists and may cause caculation error!");
 		}
@@ -95,7 +104,7 @@ public class GenoLoc implements Comparable<GenoLoc> {
 		} else {
 			int newStart = this.start < other.start ? this.start : other.start;
 			int newEnd = this.end > other.end ? this.end : other.end;
-			return new GenoLoc(this.chromosome.tax, this.chromosome.chr, newStart, newEnd);
+			return new GenoLoc(this.chromosome, newStart, newEnd);
 		}
 	}
     /**
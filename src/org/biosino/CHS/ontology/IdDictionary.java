@@ -0,0 +1,148 @@
+package org.biosino.CHS.ontology;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class encodes identifiers (such as family ids and gene ids) into dense int codes
+ * (0, 1, 2, ...), so that they can be compared and indexed as primitive ints.
+ * The encoding is reversible, and the decoded strings are canonical instances shared by all genes.
+ * A dictionary belongs to a data set, whose genes are stored in columns (see {@link GeneColumns})
+ * referring to it, so codes of different data sets must not be compared.
+ * A dictionary may be created from a table of identifiers, e.g. of a snapshot file, which are decoded
+ * on demand, so that nothing is encoded again when it is restored.
+ * It is thread-safe.
+ */
+public class IdDictionary {
+    /**
+     * The map from identifiers to codes.
+     */
+	private ConcurrentHashMap<String, Integer> codeMap;
+    /**
+     * Identifiers indexed by their codes.
+     */
+	private volatile String[] ids;
+    /**
+     * Number of identifiers encoded.
+     */
+	private volatile int size;
+    /**
+     * The table of identifiers not all decoded into <CODE>ids</CODE> and <CODE>codeMap</CODE> yet;
+     * <CODE>null</CODE> if none.
+     */
+	private volatile StringTable table;
+
+    /**
+     * Create a new empty <CODE>IdDictionary</CODE> object.
+     */
+	public IdDictionary () {
+		this.codeMap = new ConcurrentHashMap<String, Integer>();
+		this.ids = new String[1024];
+	}
+
+    /**
+     * Create a new <CODE>IdDictionary</CODE> object with the identifiers of a table, whose codes are
+     * their indexes in the table. The identifiers must be distinct. An identifier is decoded from the table
+     * when its code is first decoded, and all identifiers are mapped to codes when one is first encoded
+     * or looked up.
+     * @param table a table of distinct identifiers
+     */
+	public IdDictionary (StringTable table) {
+		this.codeMap = new ConcurrentHashMap<String, Integer>();
+		this.size = table.size();
+		this.ids = new String[Math.max(1024, this.size)];
+		this.table = table;
+	}
+
+    /**
+     * Get the code of an identifier. A new code is assigned if the identifier is not encoded yet.
+     * @param id an identifier
+     * @return the code of the identifier
+     * @throws java.lang.IllegalArgumentException if the identifier is <CODE>null</CODE>
+     */
+	public int encode (String id) {
+		if (id == null) {
+			throw new IllegalArgumentException("Identifier is null");
+		}
+		if (this.table != null) {
+			this.loadTable();
+		}
+		Integer code = this.codeMap.get(id);
+		if (code != null) {
+			return code;
+		}
+		synchronized (this) {
+			code = this.codeMap.get(id);
+			if (code != null) {
+				return code;
+			}
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size] = id;
+			code = this.size;
+			this.size++;
+			this.codeMap.put(id, code);
+			return code;
+		}
+	}
+
+    /**
+     * Get the code of an identifier without encoding it.
+     * @param id an identifier
+     * @return the code of the identifier; -1 if it is not encoded
+     */
+	public int getCode (String id) {
+		if (id == null) {
+			return -1;
+		}
+		if (this.table != null) {
+			this.loadTable();
+		}
+		Integer code = this.codeMap.get(id);
+		return code == null ? -1 : code;
+	}
+
+    /**
+     * Get the identifier of a code.
+     * @param code a code returned by {@link #encode}
+     * @return the canonical instance of the identifier
+     */
+	public String decode (int code) {
+		String id = this.ids[code];
+		if (id == null && this.table != null) {
+			id = this.load(code);
+		}
+		return id;
+	}
+
+    /**
+     * Get the number of identifiers encoded, which is also an upper bound of all codes.
+     * @return the number of identifiers
+     */
+	public int size () {
+		return this.size;
+	}
+
+	// Decode an identifier from the table
+	private synchronized String load (int code) {
+		if (this.ids[code] == null && this.table != null && code < this.table.size()) {
+			this.ids[code] = this.table.get(code);
+		}
+		return this.ids[code];
+	}
+
+	// Decode all identifiers from the table and map them to their codes
+	private synchronized void loadTable () {
+		if (this.table == null) {
+			return;
+		}
+		for (int code = 0; code < this.table.size(); code++) {
+			if (this.ids[code] == null) {
+				this.ids[code] = this.table.get(code);
+			}
+			this.codeMap.put(this.ids[code], code);
+		}
+		this.table = null;
+	}
+}
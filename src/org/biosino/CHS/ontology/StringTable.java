@@ -0,0 +1,22 @@
+package org.biosino.CHS.ontology;
+
+/**
+ * This class is a read-only table of strings indexed from 0, whose strings may be decoded
+ * on demand, e.g. from a memory mapped snapshot file (see <CODE>GeneSnapshot</CODE>).
+ * Implementations must be thread-safe.
+ */
+public abstract class StringTable {
+
+    /**
+     * Get the number of strings.
+     * @return the number of strings
+     */
+	public abstract int size ();
+
+    /**
+     * Get a string of the table. A new instance may be created for each call.
+     * @param i index of the string
+     * @return the string
+     */
+	public abstract String get (int i);
+}
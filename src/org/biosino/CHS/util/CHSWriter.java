@@ -0,0 +1,174 @@
+package org.biosino.CHS.util;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
+
+/**
+ * This class writes CHS into a file while they are still being searched, e.g. by passing
+ * the CHS list of each chromosome pair from a <CODE>SearchListener</CODE>.
+ * CHS lists are put into a bounded queue and written by a dedicated writer thread,
+ * which calculates statistics and gets matched genes only once for each CHS
+ * (see {@link PostProcessor#setStat}). The file has the same format as
+ * {@link IO#writeCHSFile(PostProcessor, String)}, and CHS are written in the order they are put.
+ * <P>
+ * If the queue is full, {@link #write} blocks until the writer thread catches up,
+ * so that CHS and their genes waiting for writing are bounded.
+ */
+public class CHSWriter {
+    /**
+     * The default capacity of the queue (number of CHS lists).
+     */
+	public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The list put into the queue to stop the writer thread.
+     */
+	private static final List<CHS> END = new ArrayList<CHS>();
+
+    /**
+     * The post processor calculating statistics.
+     */
+	private PostProcessor postPro;
+    /**
+     * The file name.
+     */
+	private String fileName;
+    /**
+     * The writer of the file.
+     */
+	private PrintWriter out;
+    /**
+     * CHS lists waiting for writing.
+     */
+	private BlockingQueue<List<CHS>> queue;
+    /**
+     * The writer thread.
+     */
+	private Thread thread;
+    /**
+     * Number of CHS written.
+     */
+	private volatile int CHSNum;
+    /**
+     * The exception thrown in the writer thread; <CODE>null</CODE> if none.
+     */
+	private volatile RuntimeException error;
+    /**
+     * Indicating whether the writer is closed.
+     */
+	private boolean closed;
+    /**
+     * The Flight Recorder event of writing the file, from creating the writer to closing it.
+     */
+	private FileIOEvent event;
+
+    /**
+     * Create a new <CODE>CHSWriter</CODE> object with a queue of {@link #DEFAULT_CAPACITY}
+     * and start the writer thread.
+     * @param postPro the post processor calculating statistics
+     * @param fileName output file name
+     * @throws java.io.IOException IOException
+     */
+	public CHSWriter (PostProcessor postPro, String fileName) throws IOException {
+		this(postPro, fileName, DEFAULT_CAPACITY);
+	}
+
+    /**
+     * Create a new <CODE>CHSWriter</CODE> object and start the writer thread.
+     * @param postPro the post processor calculating statistics
+     * @param fileName output file name
+     * @param capacity the maximum number of CHS lists waiting for writing
+     * @throws java.io.IOException IOException
+     */
+	public CHSWriter (PostProcessor postPro, String fileName, int capacity) throws IOException {
+		this.event = new FileIOEvent();
+		this.event.begin();
+		this.postPro = postPro;
+		this.fileName = fileName;
+		this.out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+		IO.writeCHSHeader(this.out);
+		this.queue = new ArrayBlockingQueue<List<CHS>>(capacity > 0 ? capacity : 1);
+		this.thread = new Thread(new Runnable() {
+			public void run () {
+				CHSWriter.this.run();
+			}
+		}, "CHSWriter");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+    /**
+     * Put a CHS list into the queue for writing. It blocks while the queue is full.
+     * The CHS should not be modified afterwards, since their statistics are set by the writer thread.
+     * @param CHSList a CHS list
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+	public void write (List<CHS> CHSList) throws InterruptedException {
+		if (CHSList.isEmpty()) {
+			return;
+		}
+		this.queue.put(CHSList);
+	}
+
+    /**
+     * Wait until all CHS in the queue are written and close the file.
+     * @return number of CHS written
+     * @throws java.io.IOException if the file can not be written
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+	public synchronized int close () throws IOException, InterruptedException {
+		if (!this.closed) {
+			this.queue.put(END);
+			this.thread.join();
+			this.out.close();
+			this.closed = true;
+			this.event.commit("write CHS", this.fileName, 0, this.CHSNum);
+		}
+		if (this.error != null) {
+			throw this.error;
+		}
+		if (this.out.checkError()) {
+			throw new IOException("Error in writing CHS file " + this.fileName);
+		}
+		return this.CHSNum;
+	}
+
+    /**
+     * Get the number of CHS written so far.
+     * @return number of CHS
+     */
+	public int getCHSNum () {
+		return this.CHSNum;
+	}
+
+	// Write CHS lists in the queue until the end is taken
+	private void run () {
+		while (true) {
+			List<CHS> CHSList;
+			try {
+				CHSList = this.queue.take();
+			} catch (InterruptedException e) {
+				continue;   // only close() stops the thread
+			}
+			if (CHSList == END) {
+				break;
+			}
+			if (this.error != null) {
+				continue;   // keep taking lists, so that write() is never blocked
+			}
+			try {
+				for (CHS iCHS : CHSList) {
+					IO.writeCHS(this.out, iCHS, this.postPro.setStat(iCHS));
+					this.CHSNum++;
+				}
+			} catch (RuntimeException e) {
+				this.error = e;
+			}
+		}
+		this.out.flush();
+	}
+}
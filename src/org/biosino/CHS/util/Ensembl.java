@@ -87,23 +87,14 @@ public class Ensembl {
                                 contig == null || orient == null || start == 0 || end ==0)
                             continue;
 
-                        Chromosome tempChr = new Chromosome(tax, contig);
                         Gene gene = new Gene(geneID, famID, symbol, tax, contig, 
                                 orient, start, end);
-                        boolean existTempChr = false;
-			
-                        for (Chromosome chr : chromosomes.keySet()) {
-                            if (tempChr.equals(chr)) {
-                                chromosomes.get(chr).add(gene);
-                                existTempChr = true;
-                                break;
-                            }
-                        }
-
-                        if (!existTempChr) {
-                            chromosomes.put(tempChr, new ArrayList<Gene>());
-                            chromosomes.get(tempChr).add(gene);
+                        List<Gene> genes = chromosomes.get(gene.chromosome);
+                        if (genes == null) {
+                            genes = new ArrayList<Gene>();
+                            chromosomes.put(gene.chromosome, genes);
                         }
+                        genes.add(gene);
 		}
                 rowSet.close();
                 statement.close();
@@ -0,0 +1,333 @@
+package org.biosino.CHS.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * This class reads a gene file (see {@link IO#readGeneFile}) by memory mapping.
+ * The file is split into chunks at line ends, which are parsed byte by byte in parallel,
+ * and genes are then created in the order of the file. Line numbers of format errors
+ * are the same as reading the file line by line.
+ */
+class GeneFileReader {
+    /**
+     * Minimum size(bytes) of a chunk.
+     */
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+    /**
+     * Maximum size(bytes) of a chunk, which must fit in a single mapping.
+     */
+	private static final int MAX_CHUNK_SIZE = 1 << 28;
+
+    /**
+     * Number of fields of a gene record.
+     */
+	private static final int FIELD_NUM = 8;
+
+    /**
+     * Charset of the file.
+     */
+	private Charset charset;
+    /**
+     * Number of threads used for parsing.
+     */
+	private int threadNum;
+
+    /**
+     * Create a new <CODE>GeneFileReader</CODE> object.
+     * @param charset charset of the file, which must encode tabs, line ends and digits as ASCII does
+     * @param threadNum number of threads used for parsing
+     */
+	GeneFileReader (Charset charset, int threadNum) {
+		this.charset = charset;
+		this.threadNum = threadNum > 0 ? threadNum : 1;
+	}
+
+    /**
+     * Judge whether a charset encodes tabs, line ends, '#', '-' and digits as ASCII does,
+     * so that they can be found in the bytes of the file directly.
+     * @param charset a charset
+     * @return <CODE>true</CODE> if it does; <CODE>false</CODE> otherwise
+     */
+	static boolean isAsciiCompatible (Charset charset) {
+		String chars = "\t\r\n#-+0123456789";
+		try {
+			return Arrays.equals(chars.getBytes(charset.name()), chars.getBytes("US-ASCII"));
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+	}
+
+    /**
+     * Read a gene file into a map.
+     * @param fileName gene file name (including path)
+     * @return a map from each chromosome to corresponding gene list
+     * @throws java.lang.Exception IOException or InputFileFormatException
+     */
+	Map<Chromosome, List<Gene>> read (String fileName) throws Exception {
+		Map<Chromosome, List<Gene>> chromosomes = new HashMap<Chromosome, List<Gene>>();
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			List<Chunk> chunks = this.split(channel);
+
+			ForkJoinPool pool = new ForkJoinPool(Math.min(this.threadNum, Math.max(chunks.size(), 1)));
+			try {
+				for (Future<Chunk> future : pool.invokeAll(chunks)) {
+					future.get();
+				}
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException)e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+
+			// Create genes in the order of the file, so that gene lists are the same as reading line by line.
+			int lineNum = 0;
+			for (Chunk chunk : chunks) {
+				if (chunk.error != null) {
+					throw new InputFileFormatException(lineNum + chunk.errorLine, chunk.error);
+				}
+				lineNum += chunk.lineNum;
+				for (int r = 0; r < chunk.recordNum; r++) {
+					int start = chunk.starts[r];
+					int end = chunk.ends[r];
+					if (start == 0 || end == 0)
+						continue;
+					int f = r * (FIELD_NUM - 2);
+					Gene gene = new Gene(chunk.fields[f], chunk.fields[f + 1], chunk.fields[f + 2],
+							chunk.fields[f + 3], chunk.fields[f + 4], chunk.fields[f + 5],
+							start, end);
+					List<Gene> genes = chromosomes.get(gene.chromosome);
+					if (genes == null) {
+						genes = new ArrayList<Gene>();
+						chromosomes.put(gene.chromosome, genes);
+					}
+					genes.add(gene);
+				}
+			}
+		} finally {
+			file.close();
+		}
+		return chromosomes;
+	}
+
+    /**
+     * Split a file into chunks ending at line ends.
+     * @param channel channel of the file
+     * @return chunks in the order of the file
+     * @throws java.io.IOException
+     */
+	private List<Chunk> split (FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (4 * this.threadNum) + 1));
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long start = 0;
+		while (start < size) {
+			long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+			chunks.add(new Chunk(channel, start, (int)(end - start)));
+			start = end;
+		}
+		return chunks;
+	}
+
+    /**
+     * Find the start of the line following a position.
+     * @param channel channel of the file
+     * @param pos a position
+     * @param size size of the file
+     * @return the position after the first '\n' at or after <CODE>pos</CODE>; the size of the file if none
+     * @throws java.io.IOException
+     */
+	private static long nextLineStart (FileChannel channel, long pos, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		while (pos < size) {
+			buf.clear();
+			int n = channel.read(buf, pos);
+			if (n <= 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				if (buf.get(i) == '\n') {
+					return pos + i + 1;
+				}
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+    /**
+     * A chunk of the file, which is parsed into gene records.
+     */
+	private class Chunk implements Callable<Chunk> {
+		private FileChannel channel;
+		private long offset;
+		private int length;
+
+		/** Number of lines in the chunk */
+		int lineNum;
+		/** Number of gene records */
+		int recordNum;
+		/** String fields of each record: id, family, symbol, taxonomy, chromosome and orient */
+		String[] fields = new String[64 * (FIELD_NUM - 2)];
+		/** Start points of each record */
+		int[] starts = new int[64];
+		/** End points of each record */
+		int[] ends = new int[64];
+		/** The first format error; <CODE>null</CODE> if none */
+		Exception error;
+		/** Line number of the error in the chunk, from 1 */
+		int errorLine;
+
+		// bytes of the current line and its field bounds
+		private byte[] line = new byte[256];
+		private int[] tabs = new int[FIELD_NUM + 1];
+		// the last strings of taxonomy, chromosome and orient, which are shared by following records if equal
+		private String[] lastStrings = new String[FIELD_NUM];
+		private byte[][] lastBytes = new byte[FIELD_NUM][];
+
+		Chunk (FileChannel channel, long offset, int length) {
+			this.channel = channel;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public Chunk call () throws IOException {
+			MappedByteBuffer buf = this.channel.map(FileChannel.MapMode.READ_ONLY, this.offset, this.length);
+			int pos = 0;
+			while (pos < this.length) {
+				// copy a line, which ends at '\n', '\r' or "\r\n" as BufferedReader.readLine does
+				int len = 0;
+				byte b = 0;
+				while (pos < this.length) {
+					b = buf.get(pos++);
+					if (b == '\n' || b == '\r') {
+						break;
+					}
+					if (len == this.line.length) {
+						this.line = Arrays.copyOf(this.line, len * 2);
+					}
+					this.line[len++] = b;
+				}
+				if (b == '\r' && pos < this.length && buf.get(pos) == '\n') {
+					pos++;
+				}
+				this.lineNum++;
+				if (len > 0 && this.line[0] == '#')
+					continue;
+				try {
+					this.parseLine(len);
+				} catch (Exception e) {
+					this.error = e;
+					this.errorLine = this.lineNum;
+					break;
+				}
+			}
+			return this;
+		}
+
+		// Parse a line with the same result as String.split("\t") and Integer.parseInt
+		private void parseLine (int len) {
+			// bounds of the first FIELD_NUM fields; tabs[k] is the end of field k - 1
+			int fieldNum = 1;
+			this.tabs[0] = -1;
+			for (int i = 0; i < len && fieldNum <= FIELD_NUM; i++) {
+				if (this.line[i] == '\t') {
+					this.tabs[fieldNum++] = i;
+				}
+			}
+			boolean trailingEmpty = true;    // whether the fields not counted are all empty
+			if (fieldNum <= FIELD_NUM) {
+				this.tabs[fieldNum] = len;
+			} else {
+				fieldNum = FIELD_NUM;   // more fields are not used
+				for (int i = this.tabs[FIELD_NUM]; i < len && trailingEmpty; i++) {
+					trailingEmpty = this.line[i] == '\t';
+				}
+			}
+			// trailing empty fields are removed by split, unless there is no tab
+			if (fieldNum > 1 && trailingEmpty) {
+				while (fieldNum > 0 && this.tabs[fieldNum] - this.tabs[fieldNum - 1] == 1) {
+					fieldNum--;
+				}
+			}
+
+			if (fieldNum < FIELD_NUM - 1) {
+				throw new ArrayIndexOutOfBoundsException(fieldNum);
+			}
+			int start = this.parseInt(this.tabs[FIELD_NUM - 2] + 1, this.tabs[FIELD_NUM - 1]);
+			if (fieldNum < FIELD_NUM) {
+				throw new ArrayIndexOutOfBoundsException(fieldNum);
+			}
+			int end = this.parseInt(this.tabs[FIELD_NUM - 1] + 1, this.tabs[FIELD_NUM]);
+
+			int r = this.recordNum;
+			if (r == this.starts.length) {
+				this.starts = Arrays.copyOf(this.starts, r * 2);
+				this.ends = Arrays.copyOf(this.ends, r * 2);
+				this.fields = Arrays.copyOf(this.fields, r * 2 * (FIELD_NUM - 2));
+			}
+			int f = r * (FIELD_NUM - 2);
+			for (int k = 0; k < FIELD_NUM - 2; k++) {
+				this.fields[f + k] = this.string(k, this.tabs[k] + 1, this.tabs[k + 1]);
+			}
+			this.starts[r] = start;
+			this.ends[r] = end;
+			this.recordNum++;
+		}
+
+		// Create the string of a field; taxonomy, chromosome and orient equal to the last ones are shared
+		private String string (int k, int from, int to) {
+			int len = to - from;
+			if (k < 3) {
+				return new String(this.line, from, len, GeneFileReader.this.charset);
+			}
+			byte[] last = this.lastBytes[k];
+			if (last != null && last.length == len) {
+				int i = 0;
+				while (i < len && last[i] == this.line[from + i]) {
+					i++;
+				}
+				if (i == len) {
+					return this.lastStrings[k];
+				}
+			}
+			this.lastBytes[k] = Arrays.copyOfRange(this.line, from, to);
+			this.lastStrings[k] = new String(this.line, from, len, GeneFileReader.this.charset);
+			return this.lastStrings[k];
+		}
+
+		// Parse an int field; unusual numbers are left to Integer.parseInt for the same result and message
+		private int parseInt (int from, int to) {
+			int i = from;
+			boolean negative = to - from > 1 && this.line[i] == '-';
+			if (negative) {
+				i++;
+			}
+			if (to - i > 0 && to - i <= 9) {
+				int value = 0;
+				for (; i < to; i++) {
+					int digit = this.line[i] - '0';
+					if (digit < 0 || digit > 9) {
+						break;
+					}
+					value = value * 10 + digit;
+				}
+				if (i == to) {
+					return negative ? -value : value;
+				}
+			}
+			return Integer.parseInt(new String(this.line, from, to - from, GeneFileReader.this.charset));
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.biosino.CHS.util;
+
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+
+/**
+ * This class caches gene lists linked in CHS (see {@link PostProcessor#getGeneList}), so that
+ * a CHS rendered or written again and again is not expanded each time. CHS are keyed by identity.
+ * The cache holds at most a given number of gene references; the least recently used
+ * gene lists are evicted beyond that. It is thread-safe.
+ */
+class GeneListCache {
+    /**
+     * The default maximum number of gene references held by the cache.
+     */
+	static final int DEFAULT_MAX_GENES = 1 << 20;
+
+    /**
+     * The maximum number of gene references held by the cache.
+     */
+	private int maxGenes;
+    /**
+     * The number of gene references held by the cache.
+     */
+	private int geneNum;
+    /**
+     * Number of lookups finding the gene lists in the cache.
+     */
+	private long hits;
+    /**
+     * Number of lookups not finding the gene lists in the cache.
+     */
+	private long misses;
+    /**
+     * The map from CHS to gene lists, in the order of access.
+     */
+	private LinkedHashMap<CHS, Gene[][]> geneListMap;
+
+    /**
+     * Create a new <CODE>GeneListCache</CODE> object.
+     * @param maxGenes the maximum number of gene references held by the cache
+     */
+	GeneListCache (int maxGenes) {
+		this.maxGenes = maxGenes;
+		this.geneListMap = new LinkedHashMap<CHS, Gene[][]>(16, 0.75f, true);
+	}
+
+    /**
+     * Get the cached gene lists of a CHS, counting a hit or a miss.
+     * @param iCHS a CHS object
+     * @return the gene lists; <CODE>null</CODE> if not cached
+     */
+	synchronized Gene[][] get (CHS iCHS) {
+		Gene[][] geneList = this.geneListMap.get(iCHS);
+		if (geneList != null) {
+			this.hits++;
+		} else {
+			this.misses++;
+		}
+		return geneList;
+	}
+
+    /**
+     * Put the gene lists of a CHS into the cache and evict the least recently used ones if necessary.
+     * @param iCHS a CHS object
+     * @param geneList the gene lists of the CHS
+     */
+	synchronized void put (CHS iCHS, Gene[][] geneList) {
+		Gene[][] old = this.geneListMap.put(iCHS, geneList);
+		if (old != null) {
+			this.geneNum -= size(old);
+		}
+		this.geneNum += size(geneList);
+
+		Iterator<Map.Entry<CHS, Gene[][]>> it = this.geneListMap.entrySet().iterator();
+		while (this.geneNum > this.maxGenes && it.hasNext()) {
+			Map.Entry<CHS, Gene[][]> entry = it.next();
+			if (entry.getValue() == geneList) {
+				continue;   // the newest gene lists are always kept
+			}
+			this.geneNum -= size(entry.getValue());
+			it.remove();
+		}
+	}
+
+    /**
+     * Remove all cached gene lists. The counters are kept.
+     */
+	synchronized void clear () {
+		this.geneListMap.clear();
+		this.geneNum = 0;
+	}
+
+    /**
+     * Get the number of lookups finding the gene lists in the cache.
+     * @return number of hits
+     */
+	synchronized long getHits () {
+		return this.hits;
+	}
+
+    /**
+     * Get the number of lookups not finding the gene lists in the cache.
+     * @return number of misses
+     */
+	synchronized long getMisses () {
+		return this.misses;
+	}
+
+	// Number of gene references in gene lists
+	private static int size (Gene[][] geneList) {
+		int size = 0;
+		for (Gene[] genes : geneList) {
+			size += genes.length;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,648 @@
+package org.biosino.CHS.util;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
+
+/**
+ * This class saves the state of a <CODE>PreProcessor</CODE> into a binary snapshot file
+ * and restores it, so that a gene file need not be parsed and preprocessed again.
+ * The snapshot keeps ranked and filtered genes in columns (see {@link GeneColumns}),
+ * <CODE>famNumMap</CODE>, <CODE>geneNumMap</CODE>, <CODE>chrLengthMap</CODE> and <CODE>geneMeanLen</CODE>.
+ * Ids are stored as their codes in the dictionaries, which are restored as they are.
+ * <P>
+ * A snapshot is read by memory mapping, and only its index is parsed when it is opened. The columns of
+ * a chromosome are read when they are first got from <CODE>rankedColumnMap</CODE> or
+ * <CODE>filteredColumnMap</CODE>, which are read-only, while ids, symbols and <CODE>famNumMap</CODE>
+ * are decoded on demand. The file must not be changed while the <CODE>PreProcessor</CODE> is in use.
+ */
+public class GeneSnapshot {
+    /**
+     * The magic number at the start of a snapshot file ("CHSS").
+     */
+	public static final int MAGIC = 0x43485353;
+    /**
+     * The version of the snapshot format.
+     */
+	public static final int VERSION = 2;
+
+    /**
+     * The charset of strings in a snapshot file.
+     */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+    /**
+     * The maximum number of distinct orients, which are stored as byte codes.
+     */
+	private static final int MAX_ORIENT_NUM = 256;
+
+    /**
+     * Write the state of a <CODE>PreProcessor</CODE> into a snapshot file.
+     * The file format is
+     * <PRE>
+     * ----------------------------------------------
+     *   Field               Type
+     * ----------------------------------------------
+     *   Magic number        int
+     *   Version             int
+     *   For each chromosome, a block of:
+     *     Start             int column
+     *     End               int column
+     *     Family            int column (codes of Family ids)
+     *     GeneID            int column (codes of Gene ids)
+     *     Rank              int column
+     *     Orient            byte column (indexes of Orients)
+     *     Symbol            string table
+     *     Filtered rows     int column
+     *   For each species, a block of:
+     *     Family            int column (codes of Family ids)
+     *     Gene number       int column
+     *   Family ids          string table (indexed by codes)
+     *   Gene ids            string table (indexed by codes)
+     *   Index:
+     *     mergeTandem       byte
+     *     nullFamID         string
+     *     geneMeanLen       int
+     *     Family ids        section
+     *     Gene ids          section
+     *     Orients           int size, then strings
+     *     Chromosome number int
+     *     For each chromosome:
+     *       Species         string
+     *       Chromosome      string
+     *       Length          long
+     *       Gene number     int
+     *       Filtered number int
+     *       Block           section
+     *     geneNumMap        int size, then (string, int) entries
+     *     Species number    int
+     *     For each species of famNumMap:
+     *       Species         string
+     *       Family number   int
+     *       Block           section
+     *   Index offset        long
+     * ----------------------------------------------
+     * </PRE>
+     * A string is the byte length followed by UTF-8 bytes. A string table is the number of strings,
+     * the end offset of each string in all bytes (int column) and then all bytes, so that a string
+     * can be read alone. A section is the offset and byte length (long, long) of a block. Numbers are big-endian.
+     * @param prePro a <CODE>PreProcessor</CODE> object
+     * @param fileName snapshot file name (including path)
+     * @throws java.io.IOException if the file can not be written, or there are more than 256 distinct orients
+     */
+	public static void write (PreProcessor prePro, String fileName) throws IOException {
+		FileIOEvent event = new FileIOEvent();
+		event.begin();
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(
+				new FileOutputStream(fileName), 1 << 16));
+		DataOutputStream out = new DataOutputStream(counter);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			List<Chromosome> chrList = new ArrayList<Chromosome>(prePro.rankedColumnMap.keySet());
+			Collections.sort(chrList);
+			Map<String, Integer> orientCodes = new HashMap<String, Integer>();
+			List<String> orients = new ArrayList<String>();
+			int[] geneNums = new int[chrList.size()];
+			int[] filteredNums = new int[chrList.size()];
+			long[][] chrSections = new long[chrList.size()][];
+			for (int c = 0; c < chrList.size(); c++) {
+				Chromosome chr = chrList.get(c);
+				GeneColumns genes = prePro.rankedColumnMap.get(chr);
+				long offset = counter.count;
+				writeInts(out, genes.start, genes.size);
+				writeInts(out, genes.end, genes.size);
+				writeInts(out, genes.famCode, genes.size);
+				writeInts(out, genes.idCode, genes.size);
+				writeInts(out, genes.rank, genes.size);
+				byte[] orientColumn = new byte[genes.size];
+				for (int i = 0; i < genes.size; i++) {
+					String orient = genes.getOrient(i);
+					Integer code = orientCodes.get(orient);
+					if (code == null) {
+						if (orients.size() == MAX_ORIENT_NUM) {
+							throw new IOException("More than " + MAX_ORIENT_NUM +
+									" distinct orients can not be written into a snapshot: " + fileName);
+						}
+						code = orients.size();
+						orientCodes.put(orient, code);
+						orients.add(orient);
+					}
+					orientColumn[i] = code.byteValue();
+				}
+				out.write(orientColumn);
+				writeStrings(out, getSymbols(genes));
+				int[] rows = getRows(genes, prePro.filteredColumnMap.get(chr));
+				writeInts(out, rows, rows.length);
+
+				geneNums[c] = genes.size;
+				filteredNums[c] = rows.length;
+				chrSections[c] = new long[] {offset, counter.count - offset};
+			}
+
+			// Families are encoded in the dictionary of the data set, which is written after them.
+			List<String> taxList = new ArrayList<String>(prePro.famNumMap.keySet());
+			Collections.sort(taxList);
+			int[] famNums = new int[taxList.size()];
+			long[][] taxSections = new long[taxList.size()][];
+			for (int t = 0; t < taxList.size(); t++) {
+				Map<String, Integer> famNumMap = prePro.famNumMap.get(taxList.get(t));
+				int[] famCodes = new int[famNumMap.size()];
+				int[] nums = new int[famNumMap.size()];
+				int i = 0;
+				for (Map.Entry<String, Integer> famNum : famNumMap.entrySet()) {
+					famCodes[i] = prePro.famDictionary.encode(famNum.getKey());
+					nums[i] = famNum.getValue();
+					i++;
+				}
+				long offset = counter.count;
+				writeInts(out, famCodes, famCodes.length);
+				writeInts(out, nums, nums.length);
+				famNums[t] = famCodes.length;
+				taxSections[t] = new long[] {offset, counter.count - offset};
+			}
+
+			long offset = counter.count;
+			writeStrings(out, getIds(prePro.famDictionary));
+			long[] famSection = new long[] {offset, counter.count - offset};
+			offset = counter.count;
+			writeStrings(out, getIds(prePro.idDictionary));
+			long[] idSection = new long[] {offset, counter.count - offset};
+
+			long indexOffset = counter.count;
+			out.writeByte(prePro.mergeTandem ? 1 : 0);
+			writeString(out, prePro.nullFamID);
+			out.writeInt(prePro.geneMeanLen);
+			writeSection(out, famSection);
+			writeSection(out, idSection);
+			out.writeInt(orients.size());
+			for (String orient : orients) {
+				writeString(out, orient);
+			}
+			out.writeInt(chrList.size());
+			for (int c = 0; c < chrList.size(); c++) {
+				Chromosome chr = chrList.get(c);
+				writeString(out, chr.tax);
+				writeString(out, chr.chr);
+				out.writeLong(prePro.chrLengthMap.get(chr));
+				out.writeInt(geneNums[c]);
+				out.writeInt(filteredNums[c]);
+				writeSection(out, chrSections[c]);
+			}
+			out.writeInt(prePro.geneNumMap.size());
+			for (Map.Entry<String, Integer> entry : prePro.geneNumMap.entrySet()) {
+				writeString(out, entry.getKey());
+				out.writeInt(entry.getValue());
+			}
+			out.writeInt(taxList.size());
+			for (int t = 0; t < taxList.size(); t++) {
+				writeString(out, taxList.get(t));
+				out.writeInt(famNums[t]);
+				writeSection(out, taxSections[t]);
+			}
+			out.writeLong(indexOffset);
+		} finally {
+			out.close();
+		}
+		event.commit("write snapshot", fileName, getGeneNum(prePro), 0);
+	}
+
+    /**
+     * Open a snapshot file as a <CODE>PreProcessor</CODE> object (see {@link #write}).
+     * Only the index is read, and the rest is read on demand from the mapped file.
+     * @param fileName snapshot file name (including path)
+     * @return a <CODE>PreProcessor</CODE> object with the state in the snapshot
+     * @throws java.io.IOException if the file can not be read or is not a snapshot of this version
+     */
+	public static PreProcessor read (String fileName) throws IOException {
+		FileIOEvent event = new FileIOEvent();
+		event.begin();
+		PreProcessor prePro;
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// Blocks are sliced from a mapping of the whole file, unless it is too large to be mapped at once.
+			ByteBuffer whole = null;
+			if (channel.size() <= Integer.MAX_VALUE) {
+				whole = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			try {
+				prePro = read(channel, whole, fileName);
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Snapshot file is truncated: " + fileName);
+			}
+		} finally {
+			file.close();
+		}
+		event.commit("read snapshot", fileName, getGeneNum(prePro), 0);
+		return prePro;
+	}
+
+	// Read the index of a snapshot and map its blocks
+	private static PreProcessor read (FileChannel channel, ByteBuffer whole, String fileName) throws IOException {
+		long fileSize = channel.size();
+		ByteBuffer buf = map(channel, whole, 0, Math.min(fileSize, 8));
+		if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+			throw new IOException("Not a gene snapshot file: " + fileName);
+		}
+		int version = buf.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported gene snapshot version " + version + ": " + fileName);
+		}
+		long indexOffset = map(channel, whole, fileSize - 8, 8).getLong();
+		buf = map(channel, whole, indexOffset, fileSize - 8 - indexOffset);
+
+		boolean mergeTandem = buf.get() != 0;
+		String nullFamID = readString(buf);
+		PreProcessor prePro = new PreProcessor(mergeTandem, nullFamID);
+		prePro.geneMeanLen = buf.getInt();
+		prePro.famDictionary = new IdDictionary(new MappedStrings(readSection(channel, whole, buf)));
+		prePro.idDictionary = new IdDictionary(new MappedStrings(readSection(channel, whole, buf)));
+		String[] orients = new String[buf.getInt()];
+		for (int i = 0; i < orients.length; i++) {
+			orients[i] = readString(buf);
+		}
+
+		Map<Chromosome, ChrBlock> blockMap = new HashMap<Chromosome, ChrBlock>();
+		prePro.chrLengthMap = new HashMap<Chromosome, Long>();
+		int chrNum = buf.getInt();
+		for (int c = 0; c < chrNum; c++) {
+			Chromosome chr = Chromosome.getInstance(readString(buf), readString(buf));
+			prePro.chrLengthMap.put(chr, buf.getLong());
+			int geneNum = buf.getInt();
+			int filteredNum = buf.getInt();
+			blockMap.put(chr, new ChrBlock(chr, geneNum, filteredNum, readSection(channel, whole, buf),
+					orients, prePro.famDictionary, prePro.idDictionary));
+		}
+		prePro.rankedColumnMap = new ColumnMap(blockMap, false);
+		prePro.filteredColumnMap = new ColumnMap(blockMap, true);
+
+		prePro.geneNumMap = new HashMap<String, Integer>();
+		int taxNum = buf.getInt();
+		for (int i = 0; i < taxNum; i++) {
+			String tax = readString(buf);
+			prePro.geneNumMap.put(tax, buf.getInt());
+		}
+		prePro.famNumMap = new HashMap<String, Map<String, Integer>>();
+		taxNum = buf.getInt();
+		for (int i = 0; i < taxNum; i++) {
+			String tax = readString(buf);
+			int famNum = buf.getInt();
+			prePro.famNumMap.put(tax, new FamNumMap(famNum, readSection(channel, whole, buf), prePro.famDictionary));
+		}
+		return prePro;
+	}
+
+	// Number of ranked genes of all taxonomies
+	private static int getGeneNum (PreProcessor prePro) {
+		int geneNum = 0;
+		for (int num : prePro.geneNumMap.values()) {
+			geneNum += num;
+		}
+		return geneNum;
+	}
+
+    /**
+     * Get the rows of ranked genes which are kept in filtered genes.
+     * @param genes ranked genes
+     * @param filteredGenes filtered genes, which are selected from ranked genes
+     * @return row indexes in ranked genes
+     */
+	private static int[] getRows (GeneColumns genes, GeneColumns filteredGenes) {
+		int[] rows = filteredGenes.getSourceRows();
+		if (rows == null) {
+			throw new IllegalArgumentException("Filtered genes are not selected from ranked genes of " + genes.chr);
+		}
+		return rows;
+	}
+
+	// Identifiers of a dictionary, indexed by their codes
+	private static List<String> getIds (final IdDictionary dictionary) {
+		return new AbstractList<String>() {
+			public String get (int i) {
+				return dictionary.decode(i);
+			}
+			public int size () {
+				return dictionary.size();
+			}
+		};
+	}
+
+	// Gene symbols of columns
+	private static List<String> getSymbols (final GeneColumns genes) {
+		return new AbstractList<String>() {
+			public String get (int i) {
+				return genes.getSymbol(i);
+			}
+			public int size () {
+				return genes.size;
+			}
+		};
+	}
+
+	// Map a block of a snapshot file, sliced from the mapping of the whole file if it is not null
+	private static ByteBuffer map (FileChannel channel, ByteBuffer whole, long offset, long length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > channel.size()) {
+			throw new BufferUnderflowException();
+		}
+		if (whole == null) {
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot block is too large: " + length + " bytes");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		}
+		ByteBuffer block = whole.duplicate();
+		block.position((int)offset);
+		block.limit((int)(offset + length));
+		return block.slice();
+	}
+
+	// Read a section and map its block
+	private static ByteBuffer readSection (FileChannel channel, ByteBuffer whole, ByteBuffer buf) throws IOException {
+		long offset = buf.getLong();
+		return map(channel, whole, offset, buf.getLong());
+	}
+
+	// Write a section as the offset and length of a block
+	private static void writeSection (DataOutputStream out, long[] section) throws IOException {
+		out.writeLong(section[0]);
+		out.writeLong(section[1]);
+	}
+
+	// Write a string as its byte length and bytes
+	private static void writeString (DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(CHARSET);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// Read a string written by writeString
+	private static String readString (ByteBuffer buf) {
+		byte[] bytes = new byte[buf.getInt()];
+		buf.get(bytes);
+		return new String(bytes, CHARSET);
+	}
+
+	// Write strings as a string table
+	private static void writeStrings (DataOutputStream out, List<String> strings) throws IOException {
+		int n = strings.size();
+		byte[][] bytes = new byte[n][];
+		int[] ends = new int[n];
+		long end = 0;
+		for (int i = 0; i < n; i++) {
+			bytes[i] = strings.get(i).getBytes(CHARSET);
+			end += bytes[i].length;
+			if (end > Integer.MAX_VALUE) {
+				throw new IOException("Strings are too long to be written in a snapshot table");
+			}
+			ends[i] = (int)end;
+		}
+		out.writeInt(n);
+		writeInts(out, ends, n);
+		for (int i = 0; i < n; i++) {
+			out.write(bytes[i]);
+		}
+	}
+
+	// Write the first n ints of an array
+	private static void writeInts (DataOutputStream out, int[] ints, int n) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4 * n);
+		buf.asIntBuffer().put(ints, 0, n);
+		out.write(buf.array());
+	}
+
+	// Read ints to fill an array
+	private static void readInts (ByteBuffer buf, int[] ints) {
+		if (buf.remaining() < 4L * ints.length) {
+			throw new BufferUnderflowException();
+		}
+		buf.asIntBuffer().get(ints);
+		buf.position(buf.position() + 4 * ints.length);
+	}
+
+	// An output stream counting the bytes written, so that offsets of blocks are known
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		CountingOutputStream (OutputStream out) {
+			super(out);
+		}
+
+		public void write (int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		public void write (byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+	}
+
+	// A string table in a block, whose strings are decoded on demand
+	private static class MappedStrings extends StringTable {
+		private int size;
+		private IntBuffer ends;
+		private ByteBuffer bytes;
+
+		MappedStrings (ByteBuffer block) {
+			ByteBuffer buf = block.duplicate();
+			this.size = buf.getInt();
+			if (buf.remaining() < 4L * this.size) {
+				throw new BufferUnderflowException();
+			}
+			this.ends = buf.asIntBuffer();
+			buf.position(buf.position() + 4 * this.size);
+			this.bytes = buf.slice();
+			if (this.size > 0 && this.bytes.remaining() < this.ends.get(this.size - 1)) {
+				throw new BufferUnderflowException();
+			}
+		}
+
+		// Byte length of the table in its block
+		int length () {
+			return 4 + 4 * this.size + (this.size > 0 ? this.ends.get(this.size - 1) : 0);
+		}
+
+		public int size () {
+			return this.size;
+		}
+
+		public String get (int i) {
+			if (i < 0 || i >= this.size) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+			}
+			int start = i > 0 ? this.ends.get(i - 1) : 0;
+			byte[] string = new byte[this.ends.get(i) - start];
+			for (int j = 0; j < string.length; j++) {
+				string[j] = this.bytes.get(start + j);
+			}
+			return new String(string, CHARSET);
+		}
+	}
+
+	// The block of a chromosome, whose columns are read when they are first got
+	private static class ChrBlock {
+		private Chromosome chr;
+		private int geneNum;
+		private int filteredNum;
+		private ByteBuffer block;
+		private String[] orients;
+		private IdDictionary famDictionary;
+		private IdDictionary idDictionary;
+		private GeneColumns genes;
+		private GeneColumns filteredGenes;
+
+		ChrBlock (Chromosome chr, int geneNum, int filteredNum, ByteBuffer block, String[] orients,
+				IdDictionary famDictionary, IdDictionary idDictionary) {
+			this.chr = chr;
+			this.geneNum = geneNum;
+			this.filteredNum = filteredNum;
+			this.block = block;
+			this.orients = orients;
+			this.famDictionary = famDictionary;
+			this.idDictionary = idDictionary;
+		}
+
+		// Get ranked or filtered columns, reading them if not read yet
+		synchronized GeneColumns getColumns (boolean filtered) {
+			if (this.genes == null) {
+				this.read();
+			}
+			return filtered ? this.filteredGenes : this.genes;
+		}
+
+		// Read the columns from the block
+		private void read () {
+			ByteBuffer buf = this.block.duplicate();
+			buf.position(21 * this.geneNum);
+			MappedStrings symbols = new MappedStrings(buf.slice());
+			if (symbols.size() != this.geneNum) {
+				throw new IllegalStateException("Snapshot block of " + this.chr + " is corrupted");
+			}
+			GeneColumns genes = new GeneColumns(this.chr, this.geneNum,
+					this.famDictionary, this.idDictionary, symbols);
+			buf.position(0);
+			readInts(buf, genes.start);
+			readInts(buf, genes.end);
+			readInts(buf, genes.famCode);
+			readInts(buf, genes.idCode);
+			readInts(buf, genes.rank);
+			byte[] orientColumn = new byte[genes.size];
+			buf.get(orientColumn);
+			for (int i = 0; i < genes.size; i++) {
+				genes.orient[i] = this.orients[orientColumn[i] & 0xff];
+			}
+			buf.position(buf.position() + symbols.length());
+			int[] rows = new int[this.filteredNum];
+			readInts(buf, rows);
+
+			this.filteredGenes = new GeneColumns(genes, rows);
+			this.genes = genes;
+		}
+	}
+
+	// A read-only map from chromosomes to their ranked or filtered columns, which are read on demand
+	private static class ColumnMap extends AbstractMap<Chromosome, GeneColumns> {
+		private Map<Chromosome, ChrBlock> blockMap;
+		private boolean filtered;
+
+		ColumnMap (Map<Chromosome, ChrBlock> blockMap, boolean filtered) {
+			this.blockMap = blockMap;
+			this.filtered = filtered;
+		}
+
+		public GeneColumns get (Object key) {
+			ChrBlock block = this.blockMap.get(key);
+			return block == null ? null : block.getColumns(this.filtered);
+		}
+
+		public boolean containsKey (Object key) {
+			return this.blockMap.containsKey(key);
+		}
+
+		public int size () {
+			return this.blockMap.size();
+		}
+
+		public Set<Chromosome> keySet () {
+			return Collections.unmodifiableSet(this.blockMap.keySet());
+		}
+
+		public Set<Map.Entry<Chromosome, GeneColumns>> entrySet () {
+			return new AbstractSet<Map.Entry<Chromosome, GeneColumns>>() {
+				public Iterator<Map.Entry<Chromosome, GeneColumns>> iterator () {
+					final Iterator<ChrBlock> blocks = ColumnMap.this.blockMap.values().iterator();
+					return new Iterator<Map.Entry<Chromosome, GeneColumns>>() {
+						public boolean hasNext () {
+							return blocks.hasNext();
+						}
+						public Map.Entry<Chromosome, GeneColumns> next () {
+							ChrBlock block = blocks.next();
+							return new AbstractMap.SimpleImmutableEntry<Chromosome, GeneColumns>(block.chr,
+									block.getColumns(ColumnMap.this.filtered));
+						}
+						public void remove () {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				public int size () {
+					return ColumnMap.this.blockMap.size();
+				}
+			};
+		}
+	}
+
+	// A read-only map from families of a taxonomy to their gene numbers, which are decoded when first used
+	private static class FamNumMap extends AbstractMap<String, Integer> {
+		private int size;
+		private ByteBuffer block;
+		private IdDictionary famDictionary;
+		private Map<String, Integer> famNums;
+
+		FamNumMap (int size, ByteBuffer block, IdDictionary famDictionary) {
+			this.size = size;
+			this.block = block;
+			this.famDictionary = famDictionary;
+		}
+
+		public Integer get (Object key) {
+			return this.getFamNums().get(key);
+		}
+
+		public boolean containsKey (Object key) {
+			return this.getFamNums().containsKey(key);
+		}
+
+		public int size () {
+			return this.size;
+		}
+
+		public Set<Map.Entry<String, Integer>> entrySet () {
+			return this.getFamNums().entrySet();
+		}
+
+		// Decode the families and gene numbers from the block
+		private synchronized Map<String, Integer> getFamNums () {
+			if (this.famNums == null) {
+				ByteBuffer buf = this.block.duplicate();
+				int[] famCodes = new int[this.size];
+				int[] nums = new int[this.size];
+				readInts(buf, famCodes);
+				readInts(buf, nums);
+				Map<String, Integer> famNums = new HashMap<String, Integer>();
+				for (int i = 0; i < this.size; i++) {
+					famNums.put(this.famDictionary.decode(famCodes[i]), nums[i]);
+				}
+				this.famNums = Collections.unmodifiableMap(famNums);
+			}
+			return this.famNums;
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package org.biosino.CHS.util;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class generates synthetic genomes for scaling experiments, written as a gene file
+ * (see {@link IO#readGeneFile}). Genes are assigned to families whose sizes follow a power law,
+ * and duplicated blocks are planted by copying the families of a run of genes to another run,
+ * on the same or another chromosome of the same or another species.
+ * The coordinates of planted blocks are written to a separate file, so that CHS found can be checked.
+ * The same parameters and seed always give the same files.
+ */
+public class GenomeGenerator {
+    /**
+     * The <CODE>family</CODE> id of genes not belonging to any family (null family).
+     */
+	public static final String NULL_FAMILY_ID = "0";
+    /**
+     * The maximum number of genes on each chromosome, so that a chromosome is no longer than
+     * <CODE>Integer.MAX_VALUE</CODE> even if genes are adjacent.
+     */
+	public static final int MAX_GENE_NUM = Integer.MAX_VALUE / 4;
+
+	private int speciesNum = 2;
+	private int chrNum = 10;
+	private int geneNum = 1000;
+	private double familyExponent = 2.0;
+	private int maxFamilySize = 100;
+	private double nullRate = 0.1;
+	private int blockNum = 20;
+	private int blockSize = 20;
+	private long seed;
+
+    /**
+     * Create a new <CODE>GenomeGenerator</CODE> object with default parameters:
+     * 2 species, 10 chromosomes per species, 1000 genes per chromosome,
+     * family sizes from 1 to 100 following a power law of exponent 2, 10% genes in null family,
+     * and 20 planted blocks of 20 genes.
+     * @param seed the seed of random numbers
+     */
+	public GenomeGenerator (long seed) {
+		this.seed = seed;
+	}
+
+    /**
+     * Set the number of species, named "sp1", "sp2" et al.
+     * @param speciesNum number of species
+     */
+	public void setSpeciesNum (int speciesNum) {
+		this.speciesNum = speciesNum;
+	}
+
+    /**
+     * Set the number of chromosomes of each species, named "chr1", "chr2" et al.
+     * @param chrNum number of chromosomes
+     */
+	public void setChrNum (int chrNum) {
+		this.chrNum = chrNum;
+	}
+
+    /**
+     * Set the number of genes on each chromosome.
+     * @param geneNum number of genes, from 1 to {@link #MAX_GENE_NUM}
+     */
+	public void setGeneNum (int geneNum) {
+		if (geneNum < 1 || geneNum > MAX_GENE_NUM) {
+			throw new IllegalArgumentException("Number of genes should be from 1 to " + MAX_GENE_NUM + ": " + geneNum);
+		}
+		this.geneNum = geneNum;
+	}
+
+    /**
+     * Set the distribution of family sizes: the probability of size s is proportional to
+     * s^-<CODE>exponent</CODE>, for s from 1 to <CODE>maxSize</CODE>.
+     * @param exponent the exponent of the power law; 0 for uniform sizes
+     * @param maxSize the maximum family size
+     */
+	public void setFamilySizes (double exponent, int maxSize) {
+		this.familyExponent = exponent;
+		this.maxFamilySize = maxSize;
+	}
+
+    /**
+     * Set the rate of genes not belonging to any family.
+     * @param nullRate the rate, from 0 to 1
+     */
+	public void setNullRate (double nullRate) {
+		this.nullRate = nullRate;
+	}
+
+    /**
+     * Set the planted blocks.
+     * @param blockNum number of blocks
+     * @param blockSize number of genes in each copy of a block
+     */
+	public void setBlocks (int blockNum, int blockSize) {
+		this.blockNum = blockNum;
+		this.blockSize = blockSize;
+	}
+
+    /**
+     * Generate the genomes and write them into files.
+     * <P>
+     * The block file has a line for each planted block, with fields separated by tabs:
+     * taxonomy, chromosome, start and end of the source copy, the same of the target copy,
+     * number of genes, and "+" if the copy keeps the order of genes or "-" if it is inverted.
+     * Start and end are those of the first and last genes, as <CODE>GenoLoc</CODE> of CHS are.
+     * Blocks do not overlap each other. Genes in null family of the source copy stay in null family,
+     * and families may be shared by background genes, so that CHS found may be smaller or larger.
+     * @param geneFile gene file name
+     * @param blockFile block file name
+     * @return number of blocks planted, which is less than required if there is no room for more
+     * @throws java.io.IOException IOException
+     */
+	public int write (String geneFile, String blockFile) throws IOException {
+		Random random = new Random(this.seed);
+		int chrTotal = this.speciesNum * this.chrNum;
+
+		// assign families from a shuffled pool, in which each family has as many slots as its size
+		int[][] families = new int[chrTotal][this.geneNum];
+		int[] pool = this.createFamilyPool(random, chrTotal * this.geneNum);
+		int p = 0;
+		for (int c = 0; c < chrTotal; c++) {
+			for (int i = 0; i < this.geneNum; i++) {
+				families[c][i] = random.nextDouble() < this.nullRate ? 0 : pool[p];
+				p++;
+			}
+		}
+
+		// plant blocks at runs of genes not used by other blocks
+		boolean[][] used = new boolean[chrTotal][this.geneNum];
+		List<int[]> blocks = new ArrayList<int[]>();
+		int attempts = 0;
+		while (blocks.size() < this.blockNum && attempts < 100 * this.blockNum + 100 &&
+				this.blockSize > 0 && this.blockSize <= this.geneNum) {
+			attempts++;
+			int chrA = random.nextInt(chrTotal);
+			int chrB = random.nextInt(chrTotal);
+			int startA = random.nextInt(this.geneNum - this.blockSize + 1);
+			int startB = random.nextInt(this.geneNum - this.blockSize + 1);
+			boolean inverted = random.nextBoolean();
+			if (!isFree(used[chrA], startA, this.blockSize) || !isFree(used[chrB], startB, this.blockSize) ||
+					(chrA == chrB && Math.abs(startA - startB) < this.blockSize)) {
+				continue;
+			}
+			for (int k = 0; k < this.blockSize; k++) {
+				int j = inverted ? startB + this.blockSize - 1 - k : startB + k;
+				families[chrB][j] = families[chrA][startA + k];
+				used[chrA][startA + k] = true;
+				used[chrB][j] = true;
+			}
+			blocks.add(new int[] {chrA, startA, chrB, startB, inverted ? 1 : 0});
+		}
+
+		// write genes with random lengths and distances, bounded so that chromosome lengths fit in int
+		int maxStep = Math.max(1, Math.min(50000, Integer.MAX_VALUE / 2 / this.geneNum - 1));
+		int[][] starts = new int[chrTotal][this.geneNum];
+		int[][] ends = new int[chrTotal][this.geneNum];
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(geneFile)));
+		try {
+			out.println("#geneid\tfamily\tsymbol\ttaxid\tcontig\torient\tstart\tend");
+			int id = 0;
+			for (int c = 0; c < chrTotal; c++) {
+				int pos = 1;
+				for (int i = 0; i < this.geneNum; i++) {
+					pos += 1 + random.nextInt(maxStep);
+					starts[c][i] = pos;
+					pos += random.nextInt(maxStep);
+					ends[c][i] = pos;
+					id++;
+					out.println(id + "\t" + (families[c][i] == 0 ? NULL_FAMILY_ID : Integer.toString(families[c][i])) + "\tG" + id + "\t" + this.tax(c) + "\t" +
+							this.chr(c) + "\t" + (random.nextBoolean() ? "+" : "-") + "\t" +
+							starts[c][i] + "\t" + ends[c][i]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Error in writing gene file " + geneFile);
+		}
+
+		out = new PrintWriter(new BufferedWriter(new FileWriter(blockFile)));
+		try {
+			out.println("#taxA\tchrA\tstartA\tendA\ttaxB\tchrB\tstartB\tendB\tgenes\torient");
+			for (int[] block : blocks) {
+				int chrA = block[0], startA = block[1], chrB = block[2], startB = block[3];
+				int endA = startA + this.blockSize - 1, endB = startB + this.blockSize - 1;
+				out.println(this.tax(chrA) + "\t" + this.chr(chrA) + "\t" + starts[chrA][startA] + "\t" + ends[chrA][endA] + "\t" +
+						this.tax(chrB) + "\t" + this.chr(chrB) + "\t" + starts[chrB][startB] + "\t" + ends[chrB][endB] + "\t" +
+						this.blockSize + "\t" + (block[4] == 1 ? "-" : "+"));
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Error in writing block file " + blockFile);
+		}
+		return blocks.size();
+	}
+
+    /**
+     * Create a shuffled pool of family ids, each appearing as many times as the size of the family.
+     * @param random random numbers
+     * @param size size of the pool
+     * @return the pool
+     */
+	private int[] createFamilyPool (Random random, int size) {
+		// cumulative distribution of family sizes
+		double[] cdf = new double[this.maxFamilySize];
+		double sum = 0;
+		for (int s = 1; s <= this.maxFamilySize; s++) {
+			sum += Math.pow(s, -this.familyExponent);
+			cdf[s - 1] = sum;
+		}
+
+		int[] pool = new int[size];
+		int family = 0;
+		int p = 0;
+		while (p < size) {
+			int familySize = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+			familySize = (familySize < 0 ? -familySize - 1 : familySize) + 1;
+			family++;
+			for (int k = 0; k < familySize && p < size; k++) {
+				pool[p++] = family;
+			}
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = pool[i];
+			pool[i] = pool[j];
+			pool[j] = temp;
+		}
+		return pool;
+	}
+
+	// Whether a run of genes is not used by any block
+	private static boolean isFree (boolean[] used, int start, int length) {
+		for (int i = start; i < start + length; i++) {
+			if (used[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String tax (int c) {
+		return "sp" + (c / this.chrNum + 1);
+	}
+
+	private String chr (int c) {
+		return "chr" + (c % this.chrNum + 1);
+	}
+
+    /**
+     * Generate genomes in command line.
+     * Usage: java org.biosino.CHS.util.GenomeGenerator &lt;gene file&gt; &lt;block file&gt;
+     * [-seed n] [-species n] [-chrs n] [-genes n] [-exponent x] [-maxFamily n] [-null x] [-blocks n] [-blockSize n]
+     * @param args arguments
+     * @throws java.lang.Exception any exception
+     */
+	public static void main (String[] args) throws Exception {
+		if (args.length < 2 || args.length % 2 != 0) {
+			System.err.println("Usage: java org.biosino.CHS.util.GenomeGenerator <gene file> <block file> " +
+					"[-seed n] [-species n] [-chrs n] [-genes n] [-exponent x] [-maxFamily n] [-null x] " +
+					"[-blocks n] [-blockSize n]");
+			System.exit(1);
+		}
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 2; i < args.length; i += 2) {
+			options.put(args[i], args[i + 1]);
+		}
+		GenomeGenerator generator = new GenomeGenerator(Long.parseLong(get(options, "-seed", "1")));
+		generator.setSpeciesNum(Integer.parseInt(get(options, "-species", "2")));
+		generator.setChrNum(Integer.parseInt(get(options, "-chrs", "10")));
+		generator.setGeneNum(Integer.parseInt(get(options, "-genes", "1000")));
+		generator.setFamilySizes(Double.parseDouble(get(options, "-exponent", "2.0")),
+				Integer.parseInt(get(options, "-maxFamily", "100")));
+		generator.setNullRate(Double.parseDouble(get(options, "-null", "0.1")));
+		generator.setBlocks(Integer.parseInt(get(options, "-blocks", "20")),
+				Integer.parseInt(get(options, "-blockSize", "20")));
+		if (!options.isEmpty()) {
+			System.err.println("Unknown options: " + options.keySet());
+			System.exit(1);
+		}
+		int blockNum = generator.write(args[0], args[1]);
+		System.err.println(blockNum + " blocks planted");
+	}
+
+	// Remove an option and return its value, or the default value if absent
+	private static String get (Map<String, String> options, String name, String defaultValue) {
+		String value = options.remove(name);
+		return value == null ? defaultValue : value;
+	}
+}
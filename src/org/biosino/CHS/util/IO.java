@@ -1,9 +1,11 @@
 package org.biosino.CHS.util;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
 
 /**
  * This class manage IO.
@@ -30,11 +32,50 @@ public class IO {
      * Fields are separated by tabs. A line starting with "#" will be omitted.
      * InputFileFormatException will be thrown if data type is not correct or a record is not complete.
      * A gene record with null value for type String or 0 value for type int will be omitted.
+     * The file is memory mapped and parsed by all available processors.
      * @param fileName gene file name (including path)
      * @return a map from each chromosome to corresponding gene list
      * @throws java.lang.Exception IOException or InputFileFormatException
      */
 	public static Map<Chromosome, List<Gene>> readGeneFile (String fileName) 
+            throws Exception {
+		return readGeneFile(fileName, Runtime.getRuntime().availableProcessors());
+	}
+
+    /**
+     * Read gene file into a map by a given number of threads (see {@link #readGeneFile(String)}).
+     * @param fileName gene file name (including path)
+     * @param threadNum number of threads used for parsing
+     * @return a map from each chromosome to corresponding gene list
+     * @throws java.lang.Exception IOException or InputFileFormatException
+     */
+	public static Map<Chromosome, List<Gene>> readGeneFile (String fileName, int threadNum) 
+            throws Exception {
+		FileIOEvent event = new FileIOEvent();
+		event.begin();
+		Map<Chromosome, List<Gene>> chrMap;
+		Charset charset = Charset.defaultCharset();
+		if (GeneFileReader.isAsciiCompatible(charset)) {
+			chrMap = new GeneFileReader(charset, threadNum).read(fileName);
+		} else {
+			chrMap = readGeneFileByLine(fileName);
+		}
+		int geneNum = 0;
+		for (List<Gene> genes : chrMap.values()) {
+			geneNum += genes.size();
+		}
+		event.commit("read genes", fileName, geneNum, 0);
+		return chrMap;
+	}
+
+    /**
+     * Read gene file into a map line by line, for the default charsets not compatible with ASCII
+     * (see {@link #readGeneFile(String)}).
+     * @param fileName gene file name (including path)
+     * @return a map from each chromosome to corresponding gene list
+     * @throws java.lang.Exception IOException or InputFileFormatException
+     */
+	private static Map<Chromosome, List<Gene>> readGeneFileByLine (String fileName) 
             throws Exception {
 		String row;
 		String[] fields;
@@ -73,23 +114,14 @@ public class IO {
                                 contig == null || orient == null || start == 0 || end ==0)
                             continue;
 
-                        Chromosome tempChr = new Chromosome(tax, contig);
                         Gene gene = new Gene(geneID, famID, symbol, tax, contig, 
                                 orient, start, end);
-                        boolean existTempChr = false;
-			
-                        for (Chromosome chr : chromosomes.keySet()) {
-                            if (tempChr.equals(chr)) {
-                                chromosomes.get(chr).add(gene);
-                                existTempChr = true;
-                                break;
-                            }
-                        }
-
-                        if (!existTempChr) {
-                            chromosomes.put(tempChr, new ArrayList<Gene>());
-                            chromosomes.get(tempChr).add(gene);
+                        List<Gene> genes = chromosomes.get(gene.chromosome);
+                        if (genes == null) {
+                            genes = new ArrayList<Gene>();
+                            chromosomes.put(gene.chromosome, genes);
                         }
+                        genes.add(gene);
                 }
 		in.close();
 		return chromosomes;
@@ -122,6 +154,8 @@ public class IO {
      * @throws java.lang.Exception IOException or InputFileFormatException
      */
         public static List<CHS> readCHSFile (String fileName) throws Exception {
+                FileIOEvent event = new FileIOEvent();
+                event.begin();
                 List<CHS> CHSList = new ArrayList<CHS>();
                 BufferedReader in = new BufferedReader(new FileReader(fileName));
                 String line;
@@ -163,6 +197,7 @@ public class IO {
                     }
                 }
                 in.close();
+                event.commit("read CHS", fileName, 0, CHSList.size());
                 return CHSList;
         }
 
@@ -191,6 +226,8 @@ public class IO {
      */
 	public static void writeCHSFile (List<CHS> CHSList, String fileName)
 		throws IOException {
+		FileIOEvent event = new FileIOEvent();
+		event.begin();
 		PrintWriter out = new PrintWriter(new BufferedWriter(
 					new FileWriter(fileName)));
                 out.println(">Species A\tChromosome A\tStart A\tEnd A\t" +
@@ -199,6 +236,7 @@ public class IO {
 			out.println(iCHS);
 		}
 		out.close();
+		event.commit("write CHS", fileName, 0, CHSList.size());
 	}
 
     /**
@@ -238,66 +276,41 @@ public class IO {
      */
         public static void writeCHSFile(PostProcessor iPostPro, String fileName)
                 throws IOException {
+                FileIOEvent event = new FileIOEvent();
+                event.begin();
                 List<CHS> CHSList = iPostPro.CHSList;
                 PrintWriter out = new PrintWriter(new BufferedWriter(
 					new FileWriter(fileName)));
-                out.println("#Species A\tChromosome A\tStart A\tEnd A\t" +
-                        "Species B\tChromosome B\tStart B\tEnd B\tSize\tP value");
-                out.println("#GeneID A\tSymbol A\tGeneID B\tSymbol B");
+                writeCHSHeader(out);
 		for (CHS iCHS : CHSList) {
-			out.println(">" + iCHS);
-                        Gene[][] geneAry = iPostPro.getGeneList(iCHS);
-                        for (int i = 0; i < geneAry[2].length; i++) {
-                            out.println(" " + geneAry[2][i].id + "\t" + geneAry[2][i].symbol + "\t" +
-                                    geneAry[3][i].id + "\t" + geneAry[3][i].symbol);
-                        }
+                        writeCHS(out, iCHS, iPostPro.getGeneList(iCHS));
 		}
 		out.close();
+                event.commit("write CHS", fileName, 0, CHSList.size());
         }
-}
-
 
-/**
- * Exception will be thrown when the format of input file is not correct.
- * For every gene record, both completeness for all fields and the data type 
- * for each field will be checked.
- */
-class InputFileFormatException extends Exception {
-    
-    /** Message of the exception */
-    private String msg;
-    
     /**
-     * Constructs a new instance with the specified low level exception 
-     * and the row at which it is thrown.
-     * @param i the row at which the exception is thrown
-     * @param e a low level exception
+     * Write the header of a CHS file containing matched genes (see {@link #writeCHSFile(PostProcessor, String)}).
+     * @param out the writer of the file
      */
-    public InputFileFormatException (int i, Exception e) {
-        super(e);
-        String oriMsg = e.toString();
-        if (oriMsg.startsWith("java.lang.NumberFormatException")) {
-            this.msg = "Value is not a valid number at line " + i
-                    + ": " + (oriMsg.split(":"))[2];
-        } else if (oriMsg.startsWith("java.lang.ArrayIndexOutOfBoundsException")) {
-            this.msg = "Data is not complete at line " + i;
-        } else {
-            this.msg = oriMsg;
+        static void writeCHSHeader (PrintWriter out) {
+                out.println("#Species A\tChromosome A\tStart A\tEnd A\t" +
+                        "Species B\tChromosome B\tStart B\tEnd B\tSize\tP value");
+                out.println("#GeneID A\tSymbol A\tGeneID B\tSymbol B");
         }
-    }
-    
-    /**
-     * Gets the message of the exception
-     * @return the message of the exception
-     */
-    public String getMessage () {
-        return this.msg;
-    }
+
     /**
-     * Gets the description of the exception
-     * @return the description of the exception
+     * Write a CHS and its matched genes (see {@link #writeCHSFile(PostProcessor, String)}).
+     * @param out the writer of the file
+     * @param iCHS a CHS object
+     * @param geneAry gene lists linked in the CHS (see {@link PostProcessor#getGeneList})
      */
-    public String toString () {
-        return "InputFileFormatException: " + this.msg;
-    }
+        static void writeCHS (PrintWriter out, CHS iCHS, Gene[][] geneAry) {
+                out.println(">" + iCHS);
+                for (int i = 0; i < geneAry[2].length; i++) {
+                    out.println(" " + geneAry[2][i].id + "\t" + geneAry[2][i].symbol + "\t" +
+                            geneAry[3][i].id + "\t" + geneAry[3][i].symbol);
+                }
+        }
 }
+
@@ -0,0 +1,57 @@
+package org.biosino.CHS.util;
+
+/**
+ * Exception will be thrown when the format of input file is not correct.
+ * For every gene record, both completeness for all fields and the data type 
+ * for each field will be checked. It is also thrown when genes without ids are preprocessed
+ * (see {@link PreProcessor}).
+ */
+public class InputFileFormatException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+    
+    /** Message of the exception */
+    private String msg;
+    
+    /**
+     * Constructs a new instance with the specified low level exception 
+     * and the row at which it is thrown.
+     * @param i the row at which the exception is thrown
+     * @param e a low level exception
+     */
+    public InputFileFormatException (int i, Exception e) {
+        super(e);
+        String oriMsg = e.toString();
+        if (oriMsg.startsWith("java.lang.NumberFormatException")) {
+            this.msg = "Value is not a valid number at line " + i
+                    + ": " + (oriMsg.split(":"))[2];
+        } else if (oriMsg.startsWith("java.lang.ArrayIndexOutOfBoundsException")) {
+            this.msg = "Data is not complete at line " + i;
+        } else {
+            this.msg = oriMsg;
+        }
+    }
+    
+    /**
+     * Constructs a new instance with the specified message.
+     * @param msg the message of the exception
+     */
+    public InputFileFormatException (String msg) {
+        this.msg = msg;
+    }
+    
+    /**
+     * Gets the message of the exception
+     * @return the message of the exception
+     */
+    public String getMessage () {
+        return this.msg;
+    }
+    /**
+     * Gets the description of the exception
+     * @return the description of the exception
+     */
+    public String toString () {
+        return "InputFileFormatException: " + this.msg;
+    }
+}
@@ -0,0 +1,289 @@
+package org.biosino.CHS.util;
+
+import java.io.*;
+import java.lang.management.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * This class collects metrics of a run: the wall time, allocated bytes and peak heap usage of each phase
+ * (e.g. reading, preprocess, searching, postprocess and writing), and counters of each chromosome pair
+ * searched. They can be reported as text or exported as JSON. It is thread-safe.
+ * <P>
+ * Allocated bytes are estimated from the threads of the virtual machine. Before Java 21, bytes allocated
+ * by a thread after it is last seen by this object (when a phase starts or ends) and before it terminates
+ * (e.g. in a pool shut down) are missed, so the counters of chromosome pairs,
+ * measured in the searching threads, are more accurate for searching.
+ * Peak heap usage is the sum of the peaks of heap memory pools, which are reset when a phase starts,
+ * so it is only meaningful if phases do not overlap. Pools peak at different moments,
+ * so the sum is an upper bound of the peak heap usage.
+ */
+public class Metrics {
+
+    /**
+     * The metrics of a phase.
+     */
+	public static class Phase {
+	    /**
+	     * Name of the phase.
+	     */
+		public final String name;
+	    /**
+	     * Wall time(ns).
+	     */
+		public long time;
+	    /**
+	     * Bytes allocated; -1 if not supported by the virtual machine.
+	     */
+		public long allocatedBytes;
+	    /**
+	     * Peak heap usage(bytes).
+	     */
+		public long peakHeap;
+
+		Phase (String name) {
+			this.name = name;
+		}
+
+		public String toString () {
+			return String.format("%-24s%10.1f ms%10.1f MB allocated%10.1f MB peak heap", this.name,
+					this.time / 1e6, this.allocatedBytes / 1048576.0, this.peakHeap / 1048576.0);
+		}
+	}
+
+    /**
+     * Phases ended, in the order of ending.
+     */
+	private List<Phase> phases = new ArrayList<Phase>();
+    /**
+     * The map from names of phases started but not ended to their start time and allocated bytes.
+     */
+	private Map<String, long[]> startMap = new HashMap<String, long[]>();
+    /**
+     * Chromosome names of each pair, as "taxonomy:chromosome".
+     */
+	private List<String[]> pairNames = new ArrayList<String[]>();
+    /**
+     * Counters of each pair, from names to values.
+     */
+	private List<Map<String, Long>> pairCounters = new ArrayList<Map<String, Long>>();
+    /**
+     * The map from ids of live threads seen to the bytes they allocated when last seen,
+     * used if the virtual machine cannot count bytes of terminated threads.
+     */
+	private Map<Long, Long> threadBytesMap = new HashMap<Long, Long>();
+    /**
+     * Bytes allocated by threads seen and terminated since, when last seen.
+     */
+	private long terminatedBytes;
+
+    /**
+     * Start a phase.
+     * @param name name of the phase
+     */
+	public synchronized void startPhase (String name) {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+		this.startMap.put(name, new long[] {System.nanoTime(), this.getAllocatedBytes()});
+	}
+
+    /**
+     * End a phase and record its metrics.
+     * @param name name of the phase
+     * @return metrics of the phase; <CODE>null</CODE> if the phase is not started
+     */
+	public synchronized Phase endPhase (String name) {
+		long[] start = this.startMap.remove(name);
+		if (start == null) {
+			return null;
+		}
+		Phase phase = new Phase(name);
+		phase.time = System.nanoTime() - start[0];
+		long bytes = this.getAllocatedBytes();
+		phase.allocatedBytes = bytes < 0 || start[1] < 0 ? -1 : bytes - start[1];
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				phase.peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+		this.phases.add(phase);
+		return phase;
+	}
+
+    /**
+     * Add counters of a chromosome pair.
+     * @param chrA name of chromosome A
+     * @param chrB name of chromosome B
+     * @param counters the map from names of counters to values
+     */
+	public synchronized void addPair (String chrA, String chrB, Map<String, Long> counters) {
+		this.pairNames.add(new String[] {chrA, chrB});
+		this.pairCounters.add(new LinkedHashMap<String, Long>(counters));
+	}
+
+    /**
+     * Get the phases ended, in the order of ending.
+     * @return a list of phases
+     */
+	public synchronized List<Phase> getPhases () {
+		return new ArrayList<Phase>(this.phases);
+	}
+
+    /**
+     * Get the totals of counters of all chromosome pairs.
+     * @return the map from names of counters to totals
+     */
+	public synchronized Map<String, Long> getPairTotals () {
+		Map<String, Long> totals = new LinkedHashMap<String, Long>();
+		for (Map<String, Long> counters : this.pairCounters) {
+			for (Map.Entry<String, Long> entry : counters.entrySet()) {
+				Long total = totals.get(entry.getKey());
+				totals.put(entry.getKey(), (total == null ? 0 : total) + entry.getValue());
+			}
+		}
+		return totals;
+	}
+
+    /**
+     * Remove all metrics recorded.
+     */
+	public synchronized void clear () {
+		this.phases.clear();
+		this.startMap.clear();
+		this.pairNames.clear();
+		this.pairCounters.clear();
+		this.threadBytesMap.clear();
+		this.terminatedBytes = 0;
+	}
+
+    /**
+     * Remove counters of all chromosome pairs, e.g. before a new search.
+     */
+	public synchronized void clearPairs () {
+		this.pairNames.clear();
+		this.pairCounters.clear();
+	}
+
+    /**
+     * Get a text report of all phases and the totals of counters of chromosome pairs.
+     * @return the report
+     */
+	public synchronized String toString () {
+		StringBuilder sb = new StringBuilder();
+		for (Phase phase : this.phases) {
+			sb.append(phase).append('\n');
+		}
+		sb.append(this.pairCounters.size()).append(" chromosome pairs");
+		for (Map.Entry<String, Long> entry : this.getPairTotals().entrySet()) {
+			sb.append(", ").append(entry.getKey()).append(' ').append(entry.getValue());
+		}
+		return sb.append('\n').toString();
+	}
+
+    /**
+     * Get all metrics in JSON, as an object with arrays "phases" and "pairs" and an object "pairTotals".
+     * @return the JSON text
+     */
+	public synchronized String toJSON () {
+		StringBuilder sb = new StringBuilder("{\n  \"phases\": [");
+		for (int i = 0; i < this.phases.size(); i++) {
+			Phase phase = this.phases.get(i);
+			sb.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ").append(quote(phase.name))
+				.append(", \"timeNanos\": ").append(phase.time)
+				.append(", \"allocatedBytes\": ").append(phase.allocatedBytes)
+				.append(", \"peakHeapBytes\": ").append(phase.peakHeap).append('}');
+		}
+		sb.append("\n  ],\n  \"pairs\": [");
+		for (int i = 0; i < this.pairCounters.size(); i++) {
+			sb.append(i == 0 ? "\n" : ",\n").append("    {\"chrA\": ").append(quote(this.pairNames.get(i)[0]))
+				.append(", \"chrB\": ").append(quote(this.pairNames.get(i)[1]));
+			for (Map.Entry<String, Long> entry : this.pairCounters.get(i).entrySet()) {
+				sb.append(", ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+			}
+			sb.append('}');
+		}
+		sb.append("\n  ],\n  \"pairTotals\": {");
+		boolean first = true;
+		for (Map.Entry<String, Long> entry : this.getPairTotals().entrySet()) {
+			sb.append(first ? "" : ", ").append(quote(entry.getKey())).append(": ").append(entry.getValue());
+			first = false;
+		}
+		return sb.append("}\n}\n").toString();
+	}
+
+    /**
+     * Write all metrics in JSON (see {@link #toJSON}) into a file.
+     * @param fileName output file name
+     * @throws java.io.IOException IOException
+     */
+	public void writeJSON (String fileName) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(fileName));
+		try {
+			out.write(this.toJSON());
+		} finally {
+			out.close();
+		}
+	}
+
+	// Quote a string in JSON
+	private static String quote (String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int)c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+    /**
+     * Get the bytes allocated by all threads so far. The total of all threads including terminated ones
+     * is used if the virtual machine supports it (Java 21 and later); otherwise the total of live threads
+     * and of terminated threads when last seen by this object, which never decreases.
+     * @return the bytes; -1 if not supported by the virtual machine
+     */
+	private long getAllocatedBytes () {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		try {
+			Method method = com.sun.management.ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+			return (Long)method.invoke(sunBean);
+		} catch (Exception e) {
+			// not available before Java 21
+		}
+		long[] ids = sunBean.getAllThreadIds();
+		long[] bytes = sunBean.getThreadAllocatedBytes(ids);
+		Map<Long, Long> liveMap = new HashMap<Long, Long>();
+		for (int i = 0; i < ids.length; i++) {
+			if (bytes[i] > 0) {
+				liveMap.put(ids[i], bytes[i]);
+			}
+		}
+		// fold threads terminated since last seen into the total, so that only live threads are kept
+		for (Map.Entry<Long, Long> entry : this.threadBytesMap.entrySet()) {
+			if (!liveMap.containsKey(entry.getKey())) {
+				this.terminatedBytes += entry.getValue();
+			}
+		}
+		this.threadBytesMap = liveMap;
+		long total = this.terminatedBytes;
+		for (long threadBytes : liveMap.values()) {
+			total += threadBytes;
+		}
+		return total;
+	}
+}
@@ -1,8 +1,10 @@
 package org.biosino.CHS.util;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.biosino.CHS.ontology.*;
+import org.biosino.CHS.jfr.*;
 
 /**
  * This class is responsible for postprocess for resulted CHS.
@@ -10,19 +12,31 @@ import org.biosino.CHS.ontology.*;
 public class PostProcessor {
     
     /**
-     * The map from chromosomes to ranked gene lists. Tandem repeated genes
+     * The map from chromosomes to ranked genes stored in columns, whose start points
+     * are sorted and used as the index for locating genes in a CHS. Tandem repeated genes
      * are merged if <CODE>mergeTandem</CODE> is <CODE>true</CODE>.
      */
-	private Map<Chromosome, List<Gene>> rankedChrMap;   // used for getting gene list for a CHS
+        private Map<Chromosome, GeneColumns> rankedColumnMap; // used for getting gene list for a CHS
     
     /**
-     * The same as <CODE>rankedChrMap</CODE>, except that the genes with <CODE>family</CODE> id equivalent
-     * to <CODE>nullFamID</CODE> are deleted from the map.
+     * The same as <CODE>rankedColumnMap</CODE>, except that the genes with <CODE>family</CODE> id equivalent
+     * to <CODE>nullFamID</CODE> are deleted, which anchors of CHS refer to.
      */
-        private Map<Chromosome, List<Gene>> filteredChrMap; // used for getting gene list for a CHS
+        private Map<Chromosome, GeneColumns> filteredColumnMap; // used for getting gene list for a CHS
     
     /**
-     * Indicating whether the tandem repeated genes in <CODE>rankedChrMap</CODE> are merged.
+     * Indicating whether anchors of CHS found by the search are used as matched genes,
+     * instead of matching all genes in the CHS by family.
+     */
+        private boolean anchorsUsed;
+    
+    /**
+     * The cache of gene lists linked in CHS, which are got again and again for rendering and output.
+     */
+        private GeneListCache geneListCache;
+    
+    /**
+     * Indicating whether the tandem repeated genes in <CODE>rankedColumnMap</CODE> are merged.
      */
         private boolean mergeTandem;
     
@@ -45,6 +59,11 @@ public class PostProcessor {
      * The map from taxonomy name to <CODE>family</CODE> id to the number of genes belonging to the taxonomy and family,
      */
         private Map<String, Map<String, Integer>> famNumMap;   //  used for caculating p-value
+        
+    /**
+     * The map from taxonomy name to the statistics context of the taxonomy.
+     */
+        private Map<String, TaxStat> taxStatMap;   //  used for caculating p-value
 	
     /**
      * The list containing all resulted CHS.
@@ -57,20 +76,83 @@ public class PostProcessor {
         public Map<Chromosome, Map<Chromosome, Set<CHS>>> CHSMap;
 		
     /**
-     * Create a new <CODE>PostProcessor</CODE> object and calculate statistics for each CHS.
+     * Create a new <CODE>PostProcessor</CODE> object without CHS. Statistics of CHS
+     * can be calculated one by one by {@link #setStat}, e.g. when CHS are written as they are searched
+     * (see {@link CHSWriter}).
      * @param prePro the <CODE>PreProcessor</CODE> object for corresponding CHS searching
-     * @param CHSList a list containing all searched CHS
      * @param gapNum the maximum gap (gene number) allowed between neighboring genes
      */
-	public PostProcessor (PreProcessor prePro, List<CHS> CHSList, int gapNum) {
-		this.rankedChrMap = prePro.rankedChrMap;
-		this.filteredChrMap = prePro.filteredChrMap;
-		this.famNumMap = prePro.famNumMap;
-		this.geneNumMap = prePro.geneNumMap;
+	public PostProcessor (PreProcessor prePro, int gapNum) {
+		this(prePro, gapNum, false);
+	}
+	
+    /**
+     * Create a new <CODE>PostProcessor</CODE> object without CHS (see {@link #PostProcessor(PreProcessor, int)}),
+     * which may use anchors of CHS as matched genes.
+     * @param prePro the <CODE>PreProcessor</CODE> object for corresponding CHS searching
+     * @param gapNum the maximum gap (gene number) allowed between neighboring genes
+     * @param anchorsUsed indicating whether anchors are used (see {@link #getGeneList})
+     */
+	public PostProcessor (PreProcessor prePro, int gapNum, boolean anchorsUsed) {
+		this.anchorsUsed = anchorsUsed;
+		this.geneListCache = new GeneListCache(GeneListCache.DEFAULT_MAX_GENES);
+		this.filteredColumnMap = prePro.filteredColumnMap;
+		this.rankedColumnMap = prePro.rankedColumnMap;
+		// read-only views, which are safe for concurrent statistics as long as the preprocessor is not changed
+		Map<String, Map<String, Integer>> famNumMap = new HashMap<String, Map<String, Integer>>();
+		for (Map.Entry<String, Map<String, Integer>> entry : prePro.famNumMap.entrySet()) {
+			famNumMap.put(entry.getKey(), Collections.unmodifiableMap(entry.getValue()));
+		}
+		this.famNumMap = Collections.unmodifiableMap(famNumMap);
+		this.geneNumMap = Collections.unmodifiableMap(prePro.geneNumMap);
 		this.mergeTandem = prePro.mergeTandem;
 		this.nullFamID = prePro.nullFamID;
-		this.CHSList = CHSList;
                 this.gapNum = gapNum;
+		this.taxStatMap = new HashMap<String, TaxStat>();
+		for (String tax : this.geneNumMap.keySet()) {
+			this.taxStatMap.put(tax, new TaxStat(this.geneNumMap.get(tax), this.famNumMap.get(tax), gapNum,
+					prePro.famDictionary));
+		}
+		this.CHSList = new ArrayList<CHS>();
+		this.CHSMap = new HashMap<Chromosome, Map<Chromosome, Set<CHS>>>();
+	}
+	
+    /**
+     * Create a new <CODE>PostProcessor</CODE> object and calculate statistics for each CHS
+     * using all available processors.
+     * @param prePro the <CODE>PreProcessor</CODE> object for corresponding CHS searching
+     * @param CHSList a list containing all searched CHS
+     * @param gapNum the maximum gap (gene number) allowed between neighboring genes
+     */
+	public PostProcessor (PreProcessor prePro, List<CHS> CHSList, int gapNum) {
+		this(prePro, CHSList, gapNum, Runtime.getRuntime().availableProcessors());
+	}
+	
+    /**
+     * Create a new <CODE>PostProcessor</CODE> object and calculate statistics for each CHS.
+     * Statistics of different CHS are calculated in parallel, and they are the same as calculated one by one.
+     * @param prePro the <CODE>PreProcessor</CODE> object for corresponding CHS searching
+     * @param CHSList a list containing all searched CHS
+     * @param gapNum the maximum gap (gene number) allowed between neighboring genes
+     * @param threadNum number of threads used for calculating statistics
+     */
+	public PostProcessor (PreProcessor prePro, List<CHS> CHSList, int gapNum, int threadNum) {
+		this(prePro, CHSList, gapNum, threadNum, false);
+	}
+	
+    /**
+     * Create a new <CODE>PostProcessor</CODE> object and calculate statistics for each CHS
+     * (see {@link #PostProcessor(PreProcessor, List, int, int)}), which may use anchors of CHS as matched genes.
+     * @param prePro the <CODE>PreProcessor</CODE> object for corresponding CHS searching
+     * @param CHSList a list containing all searched CHS
+     * @param gapNum the maximum gap (gene number) allowed between neighboring genes
+     * @param threadNum number of threads used for calculating statistics
+     * @param anchorsUsed indicating whether anchors are used (see {@link #getGeneList})
+     */
+	public PostProcessor (PreProcessor prePro, List<CHS> CHSList, int gapNum, int threadNum,
+			boolean anchorsUsed) {
+		this(prePro, gapNum, anchorsUsed);
+		this.CHSList = CHSList;
 		
 		// construct CHSMap
 		this.CHSMap = new HashMap<Chromosome, Map<Chromosome, Set<CHS>>>();
@@ -89,8 +171,57 @@ public class PostProcessor {
 		}
 
 		// calculate size and p-value for each CHS
-		for (CHS iCHS : this.CHSList) {
-			this.setStat(iCHS);
+		CHS[] CHSAry = this.CHSList.toArray(new CHS[this.CHSList.size()]);
+		if (threadNum <= 1) {
+			new StatTask(CHSAry, 0, CHSAry.length).compute();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(threadNum);
+			try {
+				pool.invoke(new StatTask(CHSAry, 0, CHSAry.length));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+    /**
+     * The task calculating statistics for a range of CHS, which is split until it is small enough.
+     */
+	private class StatTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		/** Number of CHS below which a range is not split */
+		private static final int THRESHOLD = 64;
+		private CHS[] CHSAry;
+		private int from;
+		private int to;
+
+		StatTask (CHS[] CHSAry, int from, int to) {
+			this.CHSAry = CHSAry;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute () {
+			if (this.to - this.from <= THRESHOLD) {
+				StatBatchEvent event = new StatBatchEvent();
+				event.begin();
+				int geneNum = 0;
+				for (int i = this.from; i < this.to; i++) {
+					int[][] rows = PostProcessor.this.expandRows(this.CHSAry[i]);
+					PostProcessor.this.setStat(this.CHSAry[i], rows);
+					geneNum += rows[2].length;
+				}
+				event.end();
+				if (event.shouldCommit()) {
+					event.CHSNum = this.to - this.from;
+					event.geneNum = geneNum;
+					event.commit();
+				}
+			} else {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new StatTask(this.CHSAry, this.from, mid),
+						new StatTask(this.CHSAry, mid, this.to));
+			}
 		}
 	}
 	
@@ -101,94 +232,217 @@ public class PostProcessor {
      * The first row contains all genes in GenoLoc A and the second row in GenoLoc B;
      * the third row contains matched genes in GenoLoc A and the fourth row in genoLoc B;
      * the genes in the third and fourth rows are matched.
+     * If anchors are used and recorded for the CHS (see {@link CHS#anchors}), the matched genes are the anchors;
+     * otherwise all pairs of genes of the same family (except null family) in the CHS are matched.
+     * The former is cheaper, but may match fewer genes and so give larger p-values.
+     * <P>
+     * Recently got gene lists are cached for each CHS object, so the returned arrays must not be modified.
      */
 	public Gene[][] getGeneList (CHS iCHS) {
-		List<Gene> listA = rankedChrMap.get(iCHS.chrA);
-		List<Gene> listB = rankedChrMap.get(iCHS.chrB);
-		
-		if (listA == null || listB == null) {
+		Gene[][] geneList = this.geneListCache.get(iCHS);
+		if (geneList == null) {
+			geneList = this.expandGeneList(iCHS);
+			if (geneList != null) {
+				this.geneListCache.put(iCHS, geneList);
+			}
+		}
+		return geneList;
+	}
+
+    /**
+     * Get the number of calls to {@link #getGeneList} finding the gene lists in the cache.
+     * @return number of cache hits
+     */
+	public long getCacheHits () {
+		return this.geneListCache.getHits();
+	}
+
+    /**
+     * Get the number of calls to {@link #getGeneList} not finding the gene lists in the cache.
+     * @return number of cache misses
+     */
+	public long getCacheMisses () {
+		return this.geneListCache.getMisses();
+	}
+
+    /**
+     * Remove all cached gene lists, e.g. when a CHS is changed.
+     */
+	public void clearCache () {
+		this.geneListCache.clear();
+	}
+
+    /**
+     * Get gene lists linked in the CHS without the cache (see {@link #getGeneList}).
+     * @param iCHS a CHS object
+     * @return gene lists linked in the CHS
+     */
+	private Gene[][] expandGeneList (CHS iCHS) {
+		return this.getGeneList(iCHS, this.expandRows(iCHS));
+	}
+
+    /**
+     * Get the gene lists of rows linked in a CHS. The genes are views of the rows (see {@link GeneColumns#getGene}).
+     * @param iCHS a CHS object
+     * @param rows rows linked in the CHS (see {@link #expandRows})
+     * @return gene lists linked in the CHS; <CODE>null</CODE> if <CODE>rows</CODE> is <CODE>null</CODE>
+     */
+	private Gene[][] getGeneList (CHS iCHS, int[][] rows) {
+		if (rows == null) {
 			return null;
 		}
-		int indexA = Arrays.binarySearch(listA.toArray(), iCHS.locA);
-		int indexB = Arrays.binarySearch(listB.toArray(), iCHS.locB);
-		if (indexA < 0 || indexB <0) {
+		GeneColumns genesA = this.rankedColumnMap.get(iCHS.chrA);
+		GeneColumns genesB = this.rankedColumnMap.get(iCHS.chrB);
+		Gene[][] returnedList = new Gene[4][];
+		for (int k = 0; k < 4; k++) {
+			GeneColumns genes = k % 2 == 0 ? genesA : genesB;
+			returnedList[k] = new Gene[rows[k].length];
+			for (int i = 0; i < rows[k].length; i++) {
+				returnedList[k][i] = genes.getGene(rows[k][i]);
+			}
+		}
+		return returnedList;
+	}
+
+    /**
+     * Get rows of ranked genes linked in the CHS, in the same order as the gene lists (see {@link #getGeneList}).
+     * @param iCHS a CHS object
+     * @return a two dimensional array with four rows of row indexes in ranked genes of the chromosomes;
+     * <CODE>null</CODE> if the genes of the CHS are not found
+     */
+	private int[][] expandRows (CHS iCHS) {
+		GeneColumns genesA = this.rankedColumnMap.get(iCHS.chrA);
+		GeneColumns genesB = this.rankedColumnMap.get(iCHS.chrB);
+		
+		if (genesA == null || genesB == null) {
 			return null;
 		}
 		
 		// get all genes
-		List<Gene> iListA = new ArrayList<Gene>();
-		List<Gene> iListB = new ArrayList<Gene>();
-		while (true) {
-			Gene geneA = listA.get(indexA);
-			if (geneA.start >= iCHS.locA.end)
-				break;
-			if (geneA.end <= iCHS.locA.end) {
-				iListA.add(geneA);
-			}
-			indexA ++;
-			if (indexA >= listA.size())
-				break;
-		}
-		while (true) {
-			Gene geneB = listB.get(indexB);
-			if (geneB.start >= iCHS.locB.end)
-				break;
-			if (geneB.end <= iCHS.locB.end) {
-				iListB.add(geneB);
+		int[] rowsA = getRows(genesA, iCHS.locA);
+		int[] rowsB = getRows(genesB, iCHS.locB);
+		if (rowsA == null || rowsB == null) {
+			return null;
+		}
+
+		int[][] returnedRows = new int[4][];
+		returnedRows[0] = rowsA;
+		returnedRows[1] = rowsB;
+		if (this.anchorsUsed && iCHS.anchors != null) {
+			// anchors refer to rows of filtered genes, which are selected from ranked genes
+			int[] sourceRowsA = this.filteredColumnMap.get(iCHS.chrA).getSourceRows();
+			int[] sourceRowsB = this.filteredColumnMap.get(iCHS.chrB).getSourceRows();
+			int num = iCHS.anchors.length / 2;
+			returnedRows[2] = new int[num];
+			returnedRows[3] = new int[num];
+			for (int i = 0; i < num; i++) {
+				returnedRows[2][i] = sourceRowsA[iCHS.anchors[2 * i]];
+				returnedRows[3][i] = sourceRowsB[iCHS.anchors[2 * i + 1]];
 			}
-			indexB ++;
-			if (indexB >= listB.size())
-				break;
+			return returnedRows;
 		}
 
-		// get matched genes 
-		List<Gene> matchedListA = new ArrayList<Gene>();
-		List<Gene> matchedListB = new ArrayList<Gene>();
-		Map<String, Set<Gene>> famMapB = new HashMap<String, Set<Gene>>();
-		for (Gene geneB : iListB) {
-			if (geneB.family.equals(this.nullFamID))
+		// get matched genes, by sorting genes in B on (family code, index) 
+		int nullFamCode = genesB.famDictionary.getCode(this.nullFamID);
+		long[] famKeysB = new long[rowsB.length];
+		int famKeyNum = 0;
+		for (int i = 0; i < rowsB.length; i++) {
+			int famCode = genesB.famCode[rowsB[i]];
+			if (famCode == nullFamCode)
 				continue;
-			if (famMapB.get(geneB.family) == null) {
-				famMapB.put(geneB.family, new HashSet<Gene>());
+			famKeysB[famKeyNum++] = ((long)famCode << 32) | i;
+		}
+		Arrays.sort(famKeysB, 0, famKeyNum);
+		int[] matchedRowsA = new int[16];
+		int[] matchedRowsB = new int[16];
+		int matchedNum = 0;
+		for (int rowA : rowsA) {
+			int famCode = genesA.famCode[rowA];
+			int k = -Arrays.binarySearch(famKeysB, 0, famKeyNum, ((long)famCode << 32) - 1) - 1;
+			for (; k < famKeyNum && (int)(famKeysB[k] >>> 32) == famCode; k++) {
+				if (matchedNum == matchedRowsA.length) {
+					matchedRowsA = Arrays.copyOf(matchedRowsA, 2 * matchedNum);
+					matchedRowsB = Arrays.copyOf(matchedRowsB, 2 * matchedNum);
+				}
+				matchedRowsA[matchedNum] = rowA;
+				matchedRowsB[matchedNum] = rowsB[(int)famKeysB[k]];
+				matchedNum++;
 			}
-			famMapB.get(geneB.family).add(geneB);
 		}
-		for (Gene geneA : iListA) {
-			if (famMapB.get(geneA.family) != null) {
-				for (Gene geneB : famMapB.get(geneA.family)) {
-					matchedListA.add(geneA);
-					matchedListB.add(geneB);
+		returnedRows[2] = Arrays.copyOf(matchedRowsA, matchedNum);
+		returnedRows[3] = Arrays.copyOf(matchedRowsB, matchedNum);
+		return returnedRows;
+	}
+
+    /**
+     * Get rows of genes located in a GenoLoc, which starts at the start point of a gene.
+     * The first such gene is found by binary search in the start points, and genes are then
+     * scanned until one starts at or after the end point of the GenoLoc.
+     * @param genes ranked genes of the chromosome of the GenoLoc
+     * @param loc a GenoLoc object
+     * @return rows of genes ending within the GenoLoc; <CODE>null</CODE> if no gene starts at the start point of the GenoLoc
+     */
+	private static int[] getRows (GeneColumns genes, GenoLoc loc) {
+		int[] starts = genes.start;
+		int low = 0;
+		int high = genes.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] < loc.start) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		if (low >= genes.size || starts[low] != loc.start) {
+			return null;
+		}
+
+		int[] rows = new int[16];
+		int num = 0;
+		for (int i = low; i < genes.size && starts[i] < loc.end; i++) {
+			if (genes.end[i] <= loc.end) {
+				if (num == rows.length) {
+					rows = Arrays.copyOf(rows, 2 * num);
 				}
+				rows[num++] = i;
 			}
 		}
-		
-		Gene[][] returnedList = new Gene[4][];
-		returnedList[0] = new Gene[iListA.size()];
-		returnedList[1] = new Gene[iListB.size()];
-		returnedList[2] = new Gene[matchedListA.size()];
-		returnedList[3] = new Gene[matchedListB.size()];
-
-                //all genes lists
-                iListA.toArray(returnedList[0]);
-                iListB.toArray(returnedList[1]);
-                //matched genes lists
-                matchedListA.toArray(returnedList[2]);
-                matchedListB.toArray(returnedList[3]);
-		return returnedList;
+		return Arrays.copyOf(rows, num);
 	}
         
     /**
-     * Caculate statistics (size and p-value) for a CHS.
+     * Caculate statistics (size and p-value) for a CHS. It is thread-safe.
      * @param iCHS a CHS object
+     * @return gene lists linked in the CHS (see {@link #getGeneList}), which the statistics are based on
      */
-        private void setStat (CHS iCHS) {
+        public Gene[][] setStat (CHS iCHS) {
+		int[][] rows = this.expandRows(iCHS);    // each CHS once, so not cached
+		this.setStat(iCHS, rows);
+		return this.getGeneList(iCHS, rows);
+	}
+
+    /**
+     * Caculate statistics (size and p-value) for a CHS from the rows linked in it, without gene views.
+     * @param iCHS a CHS object
+     * @param rows rows linked in the CHS (see {@link #expandRows})
+     */
+	private void setStat (CHS iCHS, int[][] rows) {
 		// calculate size
-		Gene[] genes = (this.getGeneList(iCHS))[2];
-		Set<String> famSet = new HashSet<String>();
-		for (Gene gene : genes) {
-			famSet.add(gene.family);
+		int[] famCodes = this.rankedColumnMap.get(iCHS.chrA).famCode;
+		int[] matchedRows = rows[2];
+		int[] famSet = new int[matchedRows.length];
+		for (int i = 0; i < matchedRows.length; i++) {
+			famSet[i] = famCodes[matchedRows[i]];
+		}
+		Arrays.sort(famSet);
+		int size = 0;
+		for (int i = 0; i < famSet.length; i++) {
+			if (i == 0 || famSet[i] != famSet[i - 1]) {
+				famSet[size++] = famSet[i];
+			}
 		}
-		int size = famSet.size();
+		famSet = Arrays.copyOf(famSet, size);
                 iCHS.size = size;
 		
                 // calculate p-value
@@ -202,44 +456,98 @@ public class PostProcessor {
      * to randomly distribute in the genome.
      * @param taxName taxonomy name of the genome
      * @param size size of the cluster (number of marked genes)
-     * @param famSet a set contains all <CODE>family</CODE> id in the cluster
+     * @param famSet distinct <CODE>family</CODE> codes in the cluster
      * @return the exact probability
      */
-        private double getProb (String taxName, int size, Set<String> famSet) {
-                int n = 0;  // size of the genome
+        private double getProb (String taxName, int size, int[] famSet) {
+                TaxStat stat = this.taxStatMap.get(taxName);
+                int n = stat.geneNum;  // size of the genome
                 int k = size;   // size of the cluster
 		int d = this.gapNum;    // maximum gap size
-                for (String tax : this.geneNumMap.keySet()) {
-                    if (tax.equals(taxName)) {
-                        n = this.geneNumMap.get(tax);
-                    }
-                }
                 
-                double p = Math.log(n - k + 1 - (k - 1) * d / 2) + (k - 1) * Math.log(d + 1) 
-                    - this.LogCombination(n, k);
+                double p = Math.log(n - k + 1 - (k - 1) * d / 2) + (k - 1) * stat.logGap 
+                    - stat.logCombination(k);
                 
                 // correct the probability when a family contains more than one gene
-                Map<String, Integer> taxFamNum = null;
-                for (String tax : this.famNumMap.keySet()) {
-                    if (tax.equals(taxName)) {
-                        taxFamNum = this.famNumMap.get(tax);
-                    }
-                }
-                for (String famID : famSet) {
-			p += Math.log(taxFamNum.get(famID));
+                for (int famCode : famSet) {
+			p += stat.logFamNum(famCode);
 		}
                 
 		p = Math.exp(p);
 		if (p > 1) p = 1;
                 return p;
         }
-        
-	private double LogCombination (int n, int k) {
-		double rst = 0;
-		for (int i = 0; i < k; i++) {
-			rst += Math.log(n - i) - Math.log(k - i);
+
+    /**
+     * The statistics context of a taxonomy, built once for caculating p-values of all CHS.
+     * It is read-only once built.
+     */
+	private static class TaxStat {
+		/** Total gene number of the taxonomy */
+		int geneNum;
+		/** log(d + 1), d being the maximum gap size */
+		double logGap;
+		/** log(i!) for i from 0 to <CODE>geneNum</CODE> */
+		private double[] logFactorials;
+		/** log of the number of genes in each family, indexed by family code; NaN for no gene */
+		private double[] logFamNums;
+		/** The map from <CODE>family</CODE> id to the number of genes, used for families encoded later */
+		private Map<String, Integer> famNums;
+		/** The dictionary of family ids which family codes refer to */
+		private IdDictionary famDictionary;
+
+		TaxStat (int geneNum, Map<String, Integer> famNums, int gapNum, IdDictionary famDictionary) {
+			this.geneNum = geneNum;
+			this.logGap = Math.log(gapNum + 1);
+			this.famNums = famNums;
+			this.famDictionary = famDictionary;
+
+			// compensated summation, so that the error does not grow with the genome size
+			this.logFactorials = new double[geneNum + 1];
+			double sum = 0;
+			double c = 0;
+			for (int i = 2; i <= geneNum; i++) {
+				double y = Math.log(i) - c;
+				double t = sum + y;
+				c = (t - sum) - y;
+				sum = t;
+				this.logFactorials[i] = sum;
+			}
+
+			int maxCode = -1;
+			if (famNums != null) {
+				for (String famID : famNums.keySet()) {
+					maxCode = Math.max(maxCode, famDictionary.getCode(famID));
+				}
+			}
+			this.logFamNums = new double[maxCode + 1];
+			Arrays.fill(this.logFamNums, Double.NaN);
+			if (famNums != null) {
+				for (Map.Entry<String, Integer> entry : famNums.entrySet()) {
+					int famCode = famDictionary.getCode(entry.getKey());
+					if (famCode >= 0) {
+						this.logFamNums[famCode] = Math.log(entry.getValue());
+					}
+				}
+			}
 		}
-		return rst;
-        }
+
+		// log of the number of combinations choosing k genes from the genome
+		double logCombination (int k) {
+			int n = this.geneNum;
+			if (k < 0 || k > n) {
+				return Double.NaN;
+			}
+			return this.logFactorials[n] - this.logFactorials[k] - this.logFactorials[n - k];
+		}
+
+		// log of the number of genes in a family
+		double logFamNum (int famCode) {
+			if (famCode < this.logFamNums.length && !Double.isNaN(this.logFamNums[famCode])) {
+				return this.logFamNums[famCode];
+			}
+			return Math.log(this.famNums.get(this.famDictionary.decode(famCode)));
+		}
+	}
 }
 
@@ -10,15 +10,16 @@ import org.biosino.CHS.ontology.*;
 public class PreProcessor {
 
     /**
-     * The map from chromosomes to ranked gene lists. Tandem repeated genes
-     * are merged if <CODE>mergeTandem</CODE> is <CODE>true</CODE>.
+     * The map from chromosomes to ranked genes stored in columns. Tandem repeated genes
+     * are merged if <CODE>mergeTandem</CODE> is <CODE>true</CODE>. The columns are the only store of the genes:
+     * <CODE>Gene</CODE> objects are views of the rows created on demand (see {@link GeneColumns#getGene}).
      */
-	public Map<Chromosome, List<Gene>> rankedChrMap; 
+	public Map<Chromosome, GeneColumns> rankedColumnMap;
     /**
-     * The same as <CODE>rankedChrMap</CODE>, except that the genes with <CODE>family</CODE> id equivalent
-     * to <CODE>nullFamID</CODE> are deleted from the map.
+     * The same as <CODE>rankedColumnMap</CODE>, except that the genes with <CODE>family</CODE> id equivalent
+     * to <CODE>nullFamID</CODE> are deleted. It is used for CHS searching.
      */
-	public Map<Chromosome, List<Gene>> filteredChrMap;
+	public Map<Chromosome, GeneColumns> filteredColumnMap;
     /**
      * The map from taxonomy name to <CODE>family</CODE> id to the number of genes belonging to the taxonomy and family.
      */
@@ -27,13 +28,25 @@ public class PreProcessor {
      * The map from taxonomy name to total gene number.
      */
 	public Map<String, Integer> geneNumMap;
+    /**
+     * The map from chromosomes to their lengths, which are the end points of their last ranked genes.
+     */
+	public Map<Chromosome, Long> chrLengthMap;
+    /**
+     * The dictionary of family ids of the genes, which family codes in columns refer to.
+     */
+	public IdDictionary famDictionary;
+    /**
+     * The dictionary of gene ids of the genes, which gene id codes in columns refer to.
+     */
+	public IdDictionary idDictionary;
     /**
      * Average gene length.
      */
         public int geneMeanLen;
 	
     /**
-     * Indicating whether the tandem repeated genes in <CODE>rankedChrMap</CODE> are merged.
+     * Indicating whether the tandem repeated genes in <CODE>rankedColumnMap</CODE> are merged.
      */
 	public boolean mergeTandem;
     /**
@@ -43,108 +56,169 @@ public class PreProcessor {
 	
     /**
      * Create a new <CODE>PreProcessor</CODE> object and carry on all necessary preprocesses.
+     * The genes are copied into columns, and neither the map nor the genes are modified or referred to,
+     * so they can be discarded afterwards.
      * @param chrMap original chromosome map with genes not ranked
      * @param mergeTandem indicating whether tandem repeated genes should be merged
      * @param nullFamID null family id
+     * @throws InputFileFormatException if the gene id or family id of a gene is <CODE>null</CODE>
      */
 	public PreProcessor (Map<Chromosome, List<Gene>> chrMap,
-			boolean mergeTandem, String nullFamID) {
+			boolean mergeTandem, String nullFamID) throws InputFileFormatException {
 
 		this.mergeTandem = mergeTandem;
 		this.nullFamID = nullFamID;
+		this.famDictionary = new IdDictionary();
+		this.idDictionary = new IdDictionary();
+		this.rankedColumnMap = new HashMap<Chromosome, GeneColumns>();
+		this.filteredColumnMap = new HashMap<Chromosome, GeneColumns>();
+                this.geneNumMap = new HashMap<String, Integer>();
+                this.chrLengthMap = new HashMap<Chromosome, Long>();
+		Map<String, String> orients = new HashMap<String, String>();
 		
-                // Set ranks for each gene list and merge tandem repeated genes.
 		Set<Chromosome> chrSet = chrMap.keySet();
 		for (Chromosome chr : chrSet) {
 			List<Gene> genes = chrMap.get(chr);
-			this.setRanks(genes);
-		}
-		this.rankedChrMap = chrMap;
-                
-                // Other preprocesses based on ranked gene list.
-		this.filteredChrMap = new HashMap<Chromosome, List<Gene>>();
-                this.geneNumMap = new HashMap<String, Integer>();
-                
-		for (Chromosome chr : chrSet) {
+			checkIds(genes);
 			
+                        // Set ranks for the gene list and merge tandem repeated genes, storing them in columns.
+                        GeneColumns columns = this.setRanks(chr, genes, orients);
+                        this.rankedColumnMap.put(chr, columns);
+                        
                         // Filter null family.
-                        List<Gene> genes = this.rankedChrMap.get(chr);
-                        this.filteredChrMap.put(chr, this.filterNullFam(genes));
+                        this.filteredColumnMap.put(chr, new GeneColumns(columns, this.getFilteredRows(columns)));
 			
                         // For each taxonomy, caculate total gene number
-                        this.countGenes(chr, genes);
+                        this.countGenes(chr, columns.size);
                         
                         // the length of a chromosome
-                        chr.length = genes.get(genes.size() - 1).end; 		
+                        this.chrLengthMap.put(chr, (long)columns.end[columns.size - 1]);
 		}       
                 
                 // Count the number of genes belonging to each taxonomy and family.
 		this.famNumMap = new HashMap<String, Map<String, Integer>>();
 		for (Chromosome chr : chrSet) {
-			List<Gene> genes = this.filteredChrMap.get(chr);
-                        this.countFamNum(chr, genes);
+                        this.countFamNum(chr, this.filteredColumnMap.get(chr));
 		}
                 this.setGeneMeanLen();
 	}
 	
     /**
-     * Set ranks for a gene list. If <CODE>mergeTandm</CODE> is true,
-     * tandem repeated genes are merged.
+     * Create a new <CODE>PreProcessor</CODE> object without preprocesses, whose fields
+     * are to be restored by the caller (see {@link GeneSnapshot}).
+     * @param mergeTandem indicating whether tandem repeated genes have been merged
+     * @param nullFamID null family id
+     */
+	PreProcessor (boolean mergeTandem, String nullFamID) {
+		this.mergeTandem = mergeTandem;
+		this.nullFamID = nullFamID;
+	}
+
+    /**
+     * Get the gene lists of columns, which are read-only views created on demand (see {@link GeneColumns#getGenes}),
+     * e.g. ranked genes of <CODE>rankedColumnMap</CODE> for display.
+     * @param columnMap a map from chromosomes to genes stored in columns
+     * @return a map from chromosomes to gene lists
+     */
+	public static Map<Chromosome, List<Gene>> getGeneLists (Map<Chromosome, GeneColumns> columnMap) {
+		Map<Chromosome, List<Gene>> chrMap = new HashMap<Chromosome, List<Gene>>();
+		for (Map.Entry<Chromosome, GeneColumns> entry : columnMap.entrySet()) {
+			chrMap.put(entry.getKey(), entry.getValue().getGenes());
+		}
+		return chrMap;
+	}
+
+    /**
+     * Check that the gene id and family id of each gene are not <CODE>null</CODE>,
+     * so that they can be encoded.
+     * @param genes a gene list
+     * @throws InputFileFormatException if an id is <CODE>null</CODE>
+     */
+	private static void checkIds (List<Gene> genes) throws InputFileFormatException {
+		for (Gene gene : genes) {
+			if (gene.id == null || gene.family == null) {
+				throw new InputFileFormatException((gene.id == null ? "Gene id" : "Family id") +
+						" is null for the gene at " + gene.chromosome.tax + " " + gene.chromosome.chr +
+						" " + gene.start + "-" + gene.end);
+			}
+		}
+	}
+	
+    /**
+     * Set ranks for a gene list and store the ranked genes in columns. If <CODE>mergeTandm</CODE> is true,
+     * tandem repeated genes are merged. The gene list is not modified.
+     * @param chr the chromosome the genes located on
      * @param genes a gene list not ranked
+     * @param orients the map from orients to their shared instances, which is added to
+     * @return ranked genes stored in columns
      */
-	private void setRanks (List<Gene> genes) {
-		Collections.sort(genes);
+	private GeneColumns setRanks (Chromosome chr, List<Gene> genes, Map<String, String> orients) {
+		Gene[] sortedGenes = genes.toArray(new Gene[genes.size()]);
+		Arrays.sort(sortedGenes);
 		
-                // If tandem repeated genes are merged, the ranks should be modified. 
-		if (!this.mergeTandem) {
-			for (int i = 0; i < genes.size(); i++) {
-				genes.get(i).rank = i + 1;
+                // A gene is merged if it is tandem repeated with the last gene, which is merged or has a rank.
+		boolean[] merged = new boolean[sortedGenes.length];
+		int size = 0;
+		for (int i = 0; i < sortedGenes.length; i++) {
+			Gene gene = sortedGenes[i];
+			merged[i] = this.mergeTandem && i > 0 && !gene.family.equals(this.nullFamID) &&
+					gene.family.equals(sortedGenes[i - 1].family);
+			if (!merged[i]) {
+				size++;
 			}
-		} else {
-			Gene lastGene = null;
-			for (int i = 0; i < genes.size(); i ++) {
-				Gene gene = genes.get(i);
-				if (lastGene == null) {
-					gene.rank = 1;
-					lastGene = gene;
-				} else if (gene.family.equals(this.nullFamID) ||
-						!gene.family.equals(lastGene.family)) {
-					gene.rank = lastGene.rank + 1;
-					lastGene = gene;
-				} else {
-					lastGene.end = gene.end > lastGene.end ? 
-						gene.end : lastGene.end;
-					if (!lastGene.symbol.endsWith("_cluster"))
-						lastGene.symbol += "_cluster";
-					genes.remove(i);
-					i --;
-				}
+		}
+		
+		GeneColumns columns = new GeneColumns(chr, size, this.famDictionary, this.idDictionary);
+		int row = -1;
+		for (int i = 0; i < sortedGenes.length; i++) {
+			Gene gene = sortedGenes[i];
+			if (merged[i]) {
+				columns.end[row] = gene.end > columns.end[row] ? gene.end : columns.end[row];
+				if (!columns.symbol[row].endsWith("_cluster"))
+					columns.symbol[row] += "_cluster";
+				continue;
 			}
+			row++;
+			columns.start[row] = gene.start;
+			columns.end[row] = gene.end;
+			columns.famCode[row] = this.famDictionary.encode(gene.family);
+			columns.idCode[row] = this.idDictionary.encode(gene.id);
+			columns.rank[row] = row + 1;
+			String orient = orients.get(gene.orient);
+			if (orient == null && gene.orient != null) {
+				orient = gene.orient;
+				orients.put(orient, orient);
+			}
+			columns.orient[row] = orient;
+			columns.symbol[row] = gene.symbol;
 		}
+		return columns;
 	}
 
     /**
-     * Create a new gene list with genes with null family deleted.
-     * @param genes a ranked gene list
-     * @return a gene list with null family deleted
+     * Get the rows of genes not belonging to null family.
+     * @param genes ranked genes stored in columns
+     * @return row indexes in ascendent order
      */
-	private List<Gene> filterNullFam (List<Gene> genes) {
-		List<Gene> newGenes = new ArrayList<Gene>();
-		for (Gene gene : genes) {
-			if (!gene.family.equals(this.nullFamID)) {
-				newGenes.add(gene);
+	private int[] getFilteredRows (GeneColumns genes) {
+		int nullFamCode = this.famDictionary.getCode(this.nullFamID);
+		int[] rows = new int[genes.size];
+		int n = 0;
+		for (int i = 0; i < genes.size; i++) {
+			if (genes.famCode[i] != nullFamCode) {
+				rows[n++] = i;
 			}
 		}
-		return newGenes;
+		return Arrays.copyOf(rows, n);
 	}
     
     /**
      * For each taxonomy, caculate total gene number.
-     * @param chr chromosome of the gene list.
-     * @param genes a gene list
+     * @param chr chromosome of the genes.
+     * @param geneNum number of genes of the chromosome
      */
-        private void countGenes (Chromosome chr, List<Gene> genes) {
-                int n = genes.size();
+        private void countGenes (Chromosome chr, int geneNum) {
+                int n = geneNum;
                 for (String tax : this.geneNumMap.keySet()) {
                         if (tax.equals(chr.tax)) {
                             n += this.geneNumMap.get(tax);
@@ -163,25 +237,26 @@ public class PreProcessor {
                 int geneTotalNum = 0;
                 
                 // Caculate average gene length for all taxonomy and genes.
-                Set<Chromosome> chrSet = this.rankedChrMap.keySet();
+                Set<Chromosome> chrSet = this.rankedColumnMap.keySet();
                 for (Chromosome chr : chrSet) {
-                    List<Gene> genes = this.rankedChrMap.get(chr); // May be filteredChrMap for 2R
-                    geneTotalNum += genes.size();
-                    for (Gene gene : genes) {
-                        geneTotalLen += gene.end - gene.start + 1;
+                    GeneColumns genes = this.rankedColumnMap.get(chr); // May be filteredColumnMap for 2R
+                    geneTotalNum += genes.size;
+                    for (int i = 0; i < genes.size; i++) {
+                        geneTotalLen += genes.end[i] - genes.start[i] + 1;
                     }
                     
                     //May be a better way in next version, but the length will be too long (and for 2R is tricky) 
-                    //geneTotalLen += chr.length; 
+                    //geneTotalLen += this.chrLengthMap.get(chr); 
                 }
                 this.geneMeanLen = (int)(geneTotalLen / geneTotalNum);
         }
         
     /**
      * Count the the number of genes belonging to each taxonomy and family.
-     * @param genes a gene list
+     * @param chr chromosome of the genes
+     * @param genes genes stored in columns
      */
-	private void countFamNum (Chromosome chr, List<Gene> genes) {
+	private void countFamNum (Chromosome chr, GeneColumns genes) {
 		Map<String, Integer> temp = null;
                 for (String tax : this.famNumMap.keySet()) {
                         if (tax.equals(chr.tax)) {
@@ -193,8 +268,8 @@ public class PreProcessor {
                         temp = new HashMap<String, Integer>();
                         this.famNumMap.put(chr.tax, temp);
                 }
-                for (Gene gene : genes) {
-                        String famID = gene.family;
+                for (int i = 0; i < genes.size; i++) {
+                        String famID = this.famDictionary.decode(genes.famCode[i]);
                         if (temp.containsKey(famID)) {
                             temp.put(famID, temp.get(famID) + 1);
                         } else {